@@ -1,6 +1,8 @@
 import java.util.ArrayList;
 
 import anisopedctm.Board;
+import anisopedctm.NetworkModelCache;
+import anisopedctm.Numerics;
 
 
 /*
@@ -68,10 +70,14 @@ public class AnisoPedCTM {
 		expList.add("examples/scenarios/BER-sbfd_scenario-visualized-notext.txt");
 		//demonstrates visualization
 		
+		//scenarios with the same network share its topology (models are kept for all runs below)
+		NetworkModelCache modelCache = new NetworkModelCache();
+		Numerics numerics = Numerics.DEFAULT;
+		
 		expList.parallelStream().forEach((exp) -> {
 			
 			//initialize simulation by generating board
-			Board board = new Board(exp);
+			Board board = new Board(exp, modelCache, numerics);
 			
 			//simulate
 			board.simulate();
@@ -81,6 +87,9 @@ public class AnisoPedCTM {
 	
 			System.out.println("Exp " + exp.split("_")[0] +
 					"-- log-likelihood: " + board.getLogLikelihood() );
+			
+			//release threads of the board
+			board.close();
 		});
 		
 		
@@ -89,7 +98,7 @@ public class AnisoPedCTM {
 		 */
 		
 		int numIter = 256;
-		//WARNING: May take several hours to complete.
+		//WARNING: May take several hours to complete (on few cores).
 		
 		ArrayList<String> calibList = new ArrayList<String>();
 		
@@ -103,18 +112,23 @@ public class AnisoPedCTM {
 		calibList.add("examples/scenarios/HKU-weidmann_85_87.txt");
 		calibList.add("examples/scenarios/HKU-zero_85_87.txt");
 		
-		calibList.parallelStream().forEach((exp) -> {
+		//scenarios are calibrated one after another, the local optimizations of a calibration
+		//run concurrently (see Numerics.numThreads)
+		for (String exp : calibList) {
 			System.out.println("Calibration run started.");
 			
 			//initialize simulation by generating board
-			Board board = new Board(exp);
+			Board board = new Board(exp, modelCache, numerics);
 			
 			//calibrate using random initial conditions sampled from parameter search space
 			board.calibrate(numIter);
 			
 			//calibrate using default parameters as initial point
 			//board.calibrateDefaultParam();
-		});
+			
+			//release threads of the board
+			board.close();
+		}
 	}
 
 }
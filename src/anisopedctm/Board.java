@@ -1,10 +1,17 @@
 package anisopedctm;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Computation board
@@ -17,6 +24,10 @@ public class Board {
 
 	private Parameter param;
 
+	private String pathScenario; //scenario file (see newReplica)
+	private String fingerprint; //fingerprint of scenario and demand (see getFingerprint; null: not computed)
+	private boolean outputEnabled; //false: no text output and pictures (e.g., replicas used by calibration)
+
 	private Input input;
 	private Output output;
 	private Debug debug;
@@ -31,12 +42,37 @@ public class Board {
 	
 	private Hashtable<Integer, Pedestrian> pedList; //disaggregate OD table (for calibration only)
 
-	private HashSet<String> zoneList; //for consistency check
-
-	private HashSet<Integer> sinkLinks; //for removing pedestrians at destinations
-
-	private HashSet<Integer> sourceSinkNodes; 	// for setting the potential to infinity in the source/sink nodes which are not the
-												// the destination node of the group.
+	//network topology (possibly shared with other boards)
+	private NetworkModel model;
+
+	//compiled network (dense indices, CSR adjacency, link state columns)
+	private Network network;
+
+	//compiled demand (by groupID)
+	private Group[] groups;
+	private int[] groupRoute; //dense route index
+	private int[] groupSourceLink; //dense index of source link
+
+	//departure time index: groups departing in time interval t are depGroups[depGroupPtr[t]..depGroupPtr[t+1]-1]
+	private int[] depGroupPtr;
+	private int[] depGroups;
+	private int lastDeparture; //time interval of last departure
+
+	//active sets: only cells and links carrying people (and their neighbors) are processed
+	private IndexSet activeLinks; //links carrying people at the beginning of the time step
+	private IndexSet schedLinks; //active links and their downstream links (processed in current time step)
+	private IndexSet resetLinks; //links processed in previous or current time step (flows are reset)
+	private IndexSet evalCells; //cells whose fundamental diagram is evaluated
+	private int[] levelPtr; //scheduled links of propagation level v are levelLinks[levelPtr[v]..levelPtr[v+1]-1]
+	private int[] levelLinks;
+	private int levelStart; //position of first link of current level in levelLinks
+	private double totMass; //total accumulation (as of the evaluation of the fundamental diagrams)
+	private boolean networkIdle; //true if no link carried people during the last time step
+
+	//executor of parallel phases within a time step (sequential by default)
+	private ParallelLoop stepLoop;
+	private ForkJoinPool stepPool; //threads of parallel phases (null: sequential)
+	private boolean ownsStepPool; //true if stepPool has been created by this board (shut down by close)
 
 	//potential field
 	private PotentialField potField;
@@ -44,20 +80,56 @@ public class Board {
 	// calibration
 	private Calibration calib;
 
-	//constructor
+	//constructor (default numerical configuration)
 	public Board(String pathScenario) {
+		this(pathScenario, null, null, Numerics.DEFAULT, true);
+	}
+
+	//constructor with given numerical configuration
+	public Board(String pathScenario, Numerics numerics) {
+		this(pathScenario, null, null, numerics, true);
+	}
+
+	//constructor using the network model of another board (default numerical configuration)
+	public Board(String pathScenario, NetworkModel sharedModel) {
+		this(pathScenario, sharedModel, null, Numerics.DEFAULT, true);
+	}
+
+	//constructor using the network model of another board if the scenario uses the same network
+	//(cell, link and route files and cfl parameter, see NetworkModel.key), otherwise the network is loaded
+	public Board(String pathScenario, NetworkModel sharedModel, Numerics numerics) {
+		this(pathScenario, sharedModel, null, numerics, true);
+	}
+
+	//constructor taking the network model from a cache of the caller (e.g., shared by a batch of
+	//scenarios); the network is loaded and added to the cache unless the cache holds it already
+	public Board(String pathScenario, NetworkModelCache modelCache, Numerics numerics) {
+		this(pathScenario, null, modelCache, numerics, true);
+	}
+
+	//constructor as above (sharedModel and modelCache may be null); without output (outputEnabled false),
+	//neither debug output, pictures nor text output is written, irrespective of the scenario (see newReplica)
+	private Board(String pathScenario, NetworkModel sharedModel, NetworkModelCache modelCache,
+			Numerics numerics, boolean outputEnabled) {
+
+		this.pathScenario = pathScenario;
+		this.outputEnabled = outputEnabled;
 
 		input = new Input();
 		output = new Output();
 		debug = new Debug();
 
-		zoneList = new HashSet<String>();
 		potField = new PotentialField();
-		sinkLinks = new HashSet<Integer>();
+
+		if (numerics.numStepThreads > 1) {
+			stepPool = new ForkJoinPool(numerics.numStepThreads);
+			ownsStepPool = true;
+		}
+		stepLoop = new ParallelLoop(stepPool);
 
 		//load scenario
 		File scenarioFile = new File(pathScenario);
-		param = input.loadScenario(scenarioFile);
+		param = input.loadScenario(scenarioFile, numerics);
 
 		//load parameters associated with fundamental diagram and route choice
 		input.loadParam(param);
@@ -68,13 +140,26 @@ public class Board {
 		//load parameter range (for calibration)
 		input.loadParamRange(param);
 
-		cellList = input.loadCells(zoneList, param);
+		//network topology: given model, model of the cache (loaded on first use) or newly loaded model
+		if (sharedModel != null && sharedModel.key.equals(NetworkModel.key(param))) {
+			model = sharedModel;
+		} else if (modelCache != null) {
+			model = modelCache.get(input, param);
+		} else {
+			model = new NetworkModel(input, param);
+		}
 
-		linkList = input.loadLinks(cellList, sinkLinks, param);
+		//length of time step (the shortest link is known from the model)
+		param.setMinLinkLength(model.minLinkLength);
 
-		nodeList = input.buildNodes(cellList, linkList);
+		//cells and links of this board, nodes and routes of the model
+		cellList = model.newCells(param);
 
-		routeList = input.loadRoutes(cellList, zoneList, linkList, nodeList, param);
+		linkList = model.newLinks();
+
+		nodeList = model.nodeList;
+
+		routeList = model.routeList;
 		
 		//load demand either from disaggregate or from aggregated table
 		if(param.getDemandFormat().equals("disaggregate")) {
@@ -85,17 +170,21 @@ public class Board {
 			groupList = input.loadAggDemand(routeList, param);
 		}		
 
-		// Define the sourceSinkNodes
-		sourceSinkNodes = input.setSourceSinkNodes(linkList, sinkLinks, param);
+		//compile network used by time step loop
+		network = new Network(model, cellList, linkList, numerics);
+
+		compileGroups();
+
+		initActiveSets();
 
 		// We write an output to debug the initialization
-		if(param.writeDebug){
+		if(param.writeDebug && outputEnabled){
 			// In this function, we will write all the cells, all the links,
 			// all the nodes, all the routes and all the groups.
 			debug.writeDebug(cellList, linkList, nodeList, routeList, groupList, param);
 		}
 
-		if(param.visualization){
+		if(param.visualization && outputEnabled){
 			// We use the constructor of the class Visualization
 			visualization = new Visualization(cellList, groupList, param, input);
 
@@ -120,31 +209,42 @@ public class Board {
 			//perform an iteration step
 			iterate(timeStep);
 
-			if (param.writeOutput) {
-				output.writeSystemState(timeStep, linkList, param);
-			}
-
-			if (param.visualization) {
-				// Draw all the pictures
-				visualization.drawPictures(timeStep, cellList, linkList, param);
-			}
+			writeStepOutput(timeStep);
 
 			// We had the condition to stop if there isn't any pedestrian in the cells
 
-			totAcc = getTotAcc(cellList);
+			totAcc = getTotAcc();
 
-			if(totAcc < Parameter.absTol && timeStep > getLastDeparture())
+			if(totAcc < param.numerics.absTol && timeStep > getLastDeparture())
 			{
 				break;
 			}
+
+			//if network is idle, jump to the time step preceding the next departure
+			//(all skipped time steps would leave the network in the same, empty state)
+			if (param.numerics.fastForward && networkIdle) {
+				int nextDep = getNextDeparture(timeStep+1);
+
+				for (int skippedStep = timeStep+1; skippedStep < nextDep; skippedStep++) {
+					if (param.numerics.synthesizeIdleOutput) {
+						writeStepOutput(skippedStep);
+					}
+				}
+
+				timeStep = nextDep - 1;
+			}
 		}
 
 		// update simulated travel times
 		updateGroupTravelTimesSim(groupList, param);
 
 		//output (text)
-		if (param.writeOutput) {
-			output.writeTravelTime(groupList, param);
+		if (param.writeOutput && outputEnabled) {
+			output.writeTravelTime(groupList, param, getPotentialErrorBound());
+
+			if (param.numerics.potentialTol > 0.0) {
+				System.out.println("Maximum relative error bound of node potentials: " + getPotentialErrorBound());
+			}
 			
 			if(param.getWriteAggTable() == true){
 				output.writeAggregatedTable(groupList, param, getLogLikelihood());
@@ -161,111 +261,382 @@ public class Board {
 		//fill sources with entering groups
 		this.fillSources(timeStep);
 
+		boolean emptyAtStart = (activeLinks.size() == 0);
+
+		//cells to evaluate: cells of active links, and cells which carried people when last evaluated
+		//(the fundamental diagram of a cell that remains empty yields the same values again)
+		for (int k = 0; k < activeLinks.size(); k++) {
+			evalCells.add(network.linkCell[activeLinks.get(k)]);
+		}
+
 		//compute prevailing and critical speed on all links
-		for (Cell curCell : cellList.values()){
-			curCell.computeAccVelCritVel(linkList);
+		//(cells only access their own links and fundamental diagram, hence they can be processed in parallel)
+		stepLoop.run(evalCells.size(), cellPhase);
+
+		//update total accumulation (empty cells do not contribute)
+		totMass = 0.0;
+		for (int k = 0; k < evalCells.size(); k++) {
+			totMass += network.cells[evalCells.get(k)].getTotAcc();
+		}
+
+		//keep cells carrying people for next evaluation
+		evalCells.clear();
+		for (int k = 0; k < activeLinks.size(); k++) {
+			evalCells.add(network.linkCell[activeLinks.get(k)]);
 		}
 
 		//compute node potentials for all nodes for all routes, pre-compute route choice model
-		potField.computeAllNodePotentials(linkList, nodeList, routeList, sourceSinkNodes, param);
+		potField.computeAllNodePotentials(network, param, stepLoop);
+
+		//links to process: active links and their downstream links
+		for (int k = 0; k < activeLinks.size(); k++) {
+			int destNode = network.linkDestNode[activeLinks.get(k)];
 
-		//reset flows (sending capacities, candidate inflow, total in- and outflows)
-		for (Link curLink : linkList.values()) {
-			curLink.resetFlows();
+			schedLinks.add(activeLinks.get(k));
+			for (int j = network.nodeOutPtr[destNode]; j < network.nodeOutPtr[destNode+1]; j++) {
+				schedLinks.add(network.nodeOutLinks[j]);
+			}
 		}
 
-		//compute sending capacities
-		for (Link curLink : linkList.values()) {
-			//computes sending capacity hash tables for all fragments on curLink, update candidate inflow
-			curLink.setSendCap(linkList, nodeList, groupList, param);
+		//reset flows of links processed in previous or current time step
+		for (int k = 0; k < schedLinks.size(); k++) {
+			resetLinks.add(schedLinks.get(k));
 		}
+		stepLoop.run(resetLinks.size(), resetPhase);
+
+		//compute sending capacities of all fragments
+		stepLoop.run(activeLinks.size(), sendCapPhase);
+
+		//gather candidate inflows of all links
+		stepLoop.run(schedLinks.size(), candInFlowPhase);
 
-		//propagate people
-		for (Link curLink: linkList.values()) {
-			curLink.propagate(linkList);
+		//propagate people: level by level, links gather the inflows of lower numbered links and
+		//compute their outflows, then all links gather the inflows of higher numbered links
+		sortByLevel(schedLinks);
+		for (int level = 0; level < network.numLevels; level++) {
+			levelStart = levelPtr[level];
+			stepLoop.run(levelPtr[level+1] - levelStart, outFlowPhase);
 		}
+		stepLoop.run(schedLinks.size(), inFlowPhase);
 
 		//empty sink links and store travel times
 		this.emptySinks(timeStep);
+
+		//update active sets for next time step
+		activeLinks.clear();
+		resetLinks.clear();
+		for (int k = 0; k < schedLinks.size(); k++) {
+			int l = schedLinks.get(k);
+
+			if (network.links[l].getFragTable().size() > 0) {
+				activeLinks.add(l);
+			}
+			resetLinks.add(l);
+		}
+		schedLinks.clear();
+
+		//network is idle if it was empty during the whole time step
+		//(flows have been reset and empty cells evaluated, further steps without departures change nothing)
+		networkIdle = emptyAtStart && (activeLinks.size() == 0);
+	}
+
+	//initialize active sets: all cells are evaluated and all links are reset in the next time step
+	private void initActiveSets() {
+		activeLinks = new IndexSet(network.numLinks);
+		schedLinks = new IndexSet(network.numLinks);
+		resetLinks = new IndexSet(network.numLinks);
+		evalCells = new IndexSet(network.numCells);
+		levelPtr = new int[network.numLevels+1];
+		levelLinks = new int[network.numLinks];
+
+		for (int l = 0; l < network.numLinks; l++) {
+			if (network.links[l].getFragTable().size() > 0) {
+				activeLinks.add(l);
+			}
+		}
+		resetLinks.addAll();
+		evalCells.addAll();
+
+		totMass = 0.0;
+		networkIdle = false;
+
+		potField.reset();
+
+		for (int c = 0; c < network.numCells; c++) {
+			network.cells[c].funDiag.reset();
+		}
+	}
+
+	//per-step output (system state, pictures)
+	private void writeStepOutput(int timeStep) {
+		if (param.writeOutput && outputEnabled) {
+			output.writeSystemState(timeStep, linkList, param);
+		}
+
+		if (param.visualization && outputEnabled) {
+			// Draw all the pictures
+			visualization.drawPictures(timeStep, cellList, linkList, param);
+		}
+	}
+
+	//compute accumulation, prevailing and critical speed for cells from..to-1
+	private final ParallelLoop.Body cellPhase = (from, to) -> {
+		for (int k = from; k < to; k++) {
+			network.cells[evalCells.get(k)].computeAccVelCritVel();
+		}
+	};
+
+	//reset flows (candidate inflow, total in- and outflows, outbox) for reset links from..to-1
+	private final ParallelLoop.Body resetPhase = (from, to) -> {
+		for (int k = from; k < to; k++) {
+			network.links[resetLinks.get(k)].resetFlows();
+		}
+	};
+
+	//compute sending capacities for active links from..to-1
+	private final ParallelLoop.Body sendCapPhase = (from, to) -> {
+		for (int k = from; k < to; k++) {
+			network.links[activeLinks.get(k)].setSendCap(network, groupRoute);
+		}
+	};
+
+	//gather candidate inflows for scheduled links from..to-1
+	private final ParallelLoop.Body candInFlowPhase = (from, to) -> {
+		for (int k = from; k < to; k++) {
+			network.links[schedLinks.get(k)].setCandInFlow(network);
+		}
+	};
+
+	//gather inflows of lower numbered links and compute outflows for links from..to-1 of current level
+	private final ParallelLoop.Body outFlowPhase = (from, to) -> {
+		for (int k = levelStart + from; k < levelStart + to; k++) {
+			network.links[levelLinks[k]].propagateOut(network);
+		}
+	};
+
+	//gather inflows of higher numbered links for scheduled links from..to-1
+	private final ParallelLoop.Body inFlowPhase = (from, to) -> {
+		for (int k = from; k < to; k++) {
+			network.links[schedLinks.get(k)].propagateIn(network);
+		}
+	};
+
+	//sort links by propagation level (levelPtr, levelLinks)
+	private void sortByLevel(IndexSet links) {
+		Arrays.fill(levelPtr, 0);
+
+		for (int k = 0; k < links.size(); k++) {
+			levelPtr[network.linkLevel[links.get(k)]+1]++;
+		}
+		for (int level = 0; level < network.numLevels; level++) {
+			levelPtr[level+1] += levelPtr[level];
+		}
+
+		//levelPtr[v] is used as fill position of level v, and restored afterwards
+		for (int k = 0; k < links.size(); k++) {
+			int l = links.get(k);
+			levelLinks[levelPtr[network.linkLevel[l]]++] = l;
+		}
+		for (int level = network.numLevels; level > 0; level--) {
+			levelPtr[level] = levelPtr[level-1];
+		}
+		levelPtr[0] = 0;
+	}
+
+	//set executor of parallel phases within a time step (null: sequential)
+	//the executor is not shut down by close; an executor created by this board is shut down
+	public void setStepExecutor(ForkJoinPool pool) {
+		releaseStepPool();
+
+		stepPool = pool;
+		stepLoop = new ParallelLoop(pool);
+	}
+
+	//shut down the threads of parallel phases created by this board (see Numerics.numStepThreads);
+	//the board remains usable, its time steps are then computed sequentially
+	//replicas (see newReplica) use the same threads, hence they must not be in use anymore
+	public void close() {
+		releaseStepPool();
+
+		stepPool = null;
+		stepLoop = new ParallelLoop(null);
+	}
+
+	//shut down step executor if created by this board
+	private void releaseStepPool() {
+		if (ownsStepPool) {
+			stepPool.shutdown();
+			ownsStepPool = false;
+		}
 	}
 
 	//empty sinks and store travel times
 	public void emptySinks(int timeStep) {
-		//iterate through sink links
-		for (int linkID : sinkLinks) {
-			Link curLink = linkList.get(linkID); //current link
+		//iterate through sink links (only scheduled links may carry people)
+		for (int k = 0; k < schedLinks.size(); k++) {
+			int l = schedLinks.get(k);
+
+			if (!network.sinkLink[l]) {
+				continue;
+			}
+
+			FragmentTable fragTable = network.links[l].getFragTable(); //fragments on current link
 
 			int groupID; //current group ID
 			double fragSize; //current fragment size
 
 			//iterate over all active groups on current link
-			Enumeration<Integer> actGroupIDs = curLink.getActiveGroups();
-
-			while(actGroupIDs.hasMoreElements()) {
+			for (int e = fragTable.first(); e >= 0; e = fragTable.next(e)) {
 				//get groupID and corresponding group size on link
-				groupID = actGroupIDs.nextElement();
-			    fragSize = curLink.getFragSize(groupID);
+				groupID = fragTable.getGroupID(e);
+			    fragSize = fragTable.getNumPeople(e);
 
 			    //add travel time in group-specific log book
 			    if(!(timeStep == 0))
 			    {
-			    	groupList.get(groupID).addTravelTime(timeStep, fragSize);
+			    	groups[groupID].addTravelTime(timeStep, fragSize);
 			    }
-			  
-			    //remove fragment
-			    curLink.removeFrag(groupID);
 			}
+
+			//remove fragments
+			fragTable.clear();
 		}
 	}
 
 	//fill sources
 	public void fillSources(int timeStep) {
+		//no departures outside of departure time index
+		if (timeStep < 0 || timeStep > lastDeparture) {
+			return;
+		}
 
 		int groupID; //current groupID
-		int depTime; //departure time of current group
-		double numPeople; //size of current group
-		String routeName; //route of current group
-		int sourceLinkID; //source link of current group
-
-		//iterate over all groups
-		Enumeration<Integer> enumGroups = groupList.keys();
-		while (enumGroups.hasMoreElements()) {
-			//retrieve groupID and departure time of current group
-			groupID = enumGroups.nextElement();
-			depTime = groupList.get(groupID).getDepTime();
-
-			//if group departs in current time step, load them
-			if (timeStep == depTime) {
-				//get route and source link of current group
-				routeName = groupList.get(groupID).getRouteName();
-				sourceLinkID = routeList.get(routeName).getSourceLinkID();
-
-				//get group size
-				numPeople = groupList.get(groupID).getNumPeople();
-
-				//add group to source link
-				linkList.get(sourceLinkID).addFrag(groupID, numPeople);
-
-				//output time step on screen
-				//timeStepLog(timeStep);
+
+		//iterate over groups departing in current time step and add them to their source link
+		for (int k = depGroupPtr[timeStep]; k < depGroupPtr[timeStep+1]; k++) {
+			groupID = depGroups[k];
+
+			network.links[groupSourceLink[groupID]].addFrag(groupID, groups[groupID].getNumPeople());
+			activeLinks.add(groupSourceLink[groupID]);
+
+			//output time step on screen
+			//timeStepLog(timeStep);
+		}
+
+	}
+
+	//compile demand: groups, their routes and source links by groupID
+	//groupIDs are consecutive, starting at 0 (see Input)
+	private void compileGroups() {
+		int numGroups = groupList.size();
+
+		groups = new Group[numGroups];
+		groupRoute = new int[numGroups];
+		groupSourceLink = new int[numGroups];
+
+		for (int groupID = 0; groupID < numGroups; groupID++) {
+			if (!groupList.containsKey(groupID)) {
+				throw new IllegalStateException("Invalid demand: groupIDs are not consecutive (missing groupID " +
+						groupID + ")");
 			}
 
+			groups[groupID] = groupList.get(groupID);
+			groupRoute[groupID] = network.getRouteIndex(groups[groupID].getRouteName());
+			groupSourceLink[groupID] = network.routeSourceLink[groupRoute[groupID]];
+		}
+
+		//last departure (at least time interval 0)
+		lastDeparture = 0;
+		for (Group group : groups) {
+			if (lastDeparture <= group.getDepTime()) {
+				lastDeparture = group.getDepTime();
+			}
 		}
 
+		//departure time index (groups of a time interval in the order of the group table, in which
+		//they have always been loaded; groups departing before time interval 0 never enter the network)
+		depGroupPtr = new int[lastDeparture+2];
+		for (Group group : groups) {
+			if (group.getDepTime() >= 0) {
+				depGroupPtr[group.getDepTime()+1]++;
+			}
+		}
+		for (int t = 0; t <= lastDeparture; t++) {
+			depGroupPtr[t+1] += depGroupPtr[t];
+		}
+
+		depGroups = new int[depGroupPtr[lastDeparture+1]];
+		int[] depFill = new int[lastDeparture+1];
+		for (int groupID : groupList.keySet()) {
+			int depTime = groups[groupID].getDepTime();
+
+			if (depTime >= 0) {
+				depGroups[depGroupPtr[depTime] + depFill[depTime]++] = groupID;
+			}
+		}
+	}
+
+	//remove all people from the network and clear travel times of all groups
+	//(capacities of the underlying tables are kept)
+	public void resetState() {
+		for (int l = 0; l < network.numLinks; l++) {
+			network.links[l].getFragTable().reset();
+		}
+
+		for (Group group : groups) {
+			group.clearTravelTimes();
+		}
+
+		initActiveSets();
+	}
+
+	//maximum relative error bound of node potentials during simulation (0 if potentials are exact)
+	public double getPotentialErrorBound() {
+		return potField.getMaxErrorBound();
+	}
+
+	//number of root searches of critical accumulations in all cells during the current simulation run
+	//(see FunDiagWeidmann; 0 for fundamental diagrams without root search)
+	public long getNumFDSolves() {
+		long num = 0;
+		for (int c = 0; c < network.numCells; c++) {
+			num += network.cells[c].funDiag.getNumSolves();
+		}
+		return num;
+	}
+
+	//number of iterations of these root searches
+	public long getNumFDIter() {
+		long num = 0;
+		for (int c = 0; c < network.numCells; c++) {
+			num += network.cells[c].funDiag.getNumIter();
+		}
+		return num;
+	}
+
+	//number of these root searches falling back to bisection
+	public long getNumFDFallbacks() {
+		long num = 0;
+		for (int c = 0; c < network.numCells; c++) {
+			num += network.cells[c].funDiag.getNumFallbacks();
+		}
+		return num;
 	}
 
 	//return latest departure time interval
 	public int getLastDeparture() {
-		int lastDep = 0; //time interval of last departure
+		return lastDeparture;
+	}
 
-		//loop over all groups and check if there is a later departure
-		for (Group group : groupList.values() ) {
-			if (lastDep <= group.getDepTime()) {
-				lastDep = group.getDepTime();
-			}
+	//first time step from timeStep onwards in which a group departs (getLastDeparture()+1 if none)
+	public int getNextDeparture(int timeStep) {
+		int t = Math.max(timeStep, 0);
+
+		while (t <= lastDeparture && depGroupPtr[t] == depGroupPtr[t+1]) {
+			t++;
 		}
 
-		return lastDep;
+		return Math.max(t, timeStep);
 	}
 
 	//output time step on screen
@@ -276,22 +647,11 @@ public class Board {
 		}
 	}
 
-	// Function that will calculate the total number of pedestrians on all the cells
-	public double getTotAcc(Hashtable<String, Cell> cellList)
+	// total number of pedestrians on all the cells (as of the evaluation of the fundamental diagrams
+	// in the last time step, maintained over the active cells)
+	public double getTotAcc()
 	{
-		double totAcc = 0.0;
-
-		Enumeration<String> cellKeys = cellList.keys(); //enumeration of all cells
-
-		String curCell;
-
-		while(cellKeys.hasMoreElements()) {
-			curCell = cellKeys.nextElement();
-
-			totAcc = totAcc + cellList.get(curCell).getTotAcc();
-		}
-
-		return totAcc;
+		return totMass;
 	}
 
 	// calculate simulated travel time for all groups
@@ -328,35 +688,27 @@ public class Board {
 	}
 
 	// update all components based on new parameters
+	// (the network is not reloaded: only the fundamental diagrams, the demand, if it depends on the
+	// length of the time step, and the dynamic state are renewed)
 	public void updateParam(double[] newParam)
 	{
-		cellList.clear();
-		linkList.clear();
-		nodeList.clear();
-		routeList.clear();
-		groupList.clear();
-		sourceSinkNodes.clear();
-		
 		//updates field "param" by newParam
 		changeParam(newParam);
 
-		cellList = input.loadCells(zoneList, param);
-
-		linkList = input.loadLinks(cellList, sinkLinks, param);
-
-		nodeList = input.buildNodes(cellList, linkList);
+		//fundamental diagrams with new shape parameters
+		for (int c = 0; c < network.numCells; c++) {
+			network.cells[c].updateFunDiag(param);
+		}
 
-		routeList = input.loadRoutes(cellList, zoneList, linkList, nodeList, param);
-		
-		//load demand either from disaggregate or from aggregated table
+		//departure time intervals of disaggregate demand depend on the length of the time step
 		if(param.getDemandFormat().equals("disaggregate")) {
 			groupList = input.generateAggDemand(pedList, param);
-			
-		} else {
-			groupList = input.loadAggDemand(routeList, param);
+
+			compileGroups();
 		}
-		
-		sourceSinkNodes = input.setSourceSinkNodes(linkList, sinkLinks, param);
+
+		//remove all people, clear travel times and reset active sets and potentials
+		resetState();
 	}
 	
 	public void updateDisAggDemand(Hashtable<Integer, Pedestrian> pList) {
@@ -366,6 +718,10 @@ public class Board {
 		
 		//recompute and update groupList
 		groupList = input.generateAggDemand(pedList, param);
+
+		compileGroups();
+
+		fingerprint = null;
 	}
 
 	// return logLikelihood of travel times
@@ -518,6 +874,70 @@ public class Board {
 		return groupList;
 	}
 	
+	public NetworkModel getNetworkModel() {
+		return model;
+	}
+
+	//fingerprint of all inputs determining the simulation for given calibrated parameters:
+	//scenario and network files, raw demand (aggregate demand file or observed pedestrians; the
+	//groups derived from pedestrians depend on the parameters) and the settings of the numerical
+	//configuration which change results (see Numerics.resultKey). Hex-encoded SHA-256.
+	public String getFingerprint() {
+		if (fingerprint == null) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+				for (String path : new String[] {pathScenario, param.cellFilePath, param.linkFilePath,
+						param.routeFilePath}) {
+					digest.update(Files.readAllBytes(Paths.get(path)));
+				}
+
+				StringBuilder inputs = new StringBuilder();
+
+				if (param.getDemandFormat().equals("disaggregate")) {
+					for (int p = 0; p < pedList.size(); p++) {
+						Pedestrian ped = pedList.get(p);
+						inputs.append(ped.getRouteName()).append(',').append(ped.getDepTime()).append(',')
+							.append(ped.getTravelTime()).append(';');
+					}
+				} else {
+					digest.update(Files.readAllBytes(Paths.get(param.demandFilePath)));
+				}
+
+				inputs.append(param.numerics.resultKey());
+
+				digest.update(inputs.toString().getBytes(StandardCharsets.UTF_8));
+
+				StringBuilder hex = new StringBuilder();
+				for (byte b : digest.digest()) {
+					hex.append(String.format("%02x", b));
+				}
+
+				fingerprint = hex.toString();
+			}
+			catch (IOException | NoSuchAlgorithmException e) {
+				throw new IllegalStateException("Unable to compute fingerprint of scenario " + pathScenario, e);
+			}
+		}
+
+		return fingerprint;
+	}
+
+	//new board of the same scenario with the same network model and demand (e.g., for concurrent
+	//simulations during calibration); the replica does not write any output
+	public Board newReplica() {
+		Board replica = new Board(pathScenario, model, null, param.numerics, false);
+
+		//replicas share the threads of parallel phases of this board
+		replica.setStepExecutor(stepPool);
+
+		if (param.getDemandFormat().equals("disaggregate")) {
+			replica.updateDisAggDemand(new Hashtable<Integer, Pedestrian>(pedList));
+		}
+
+		return replica;
+	}
+
 	public Hashtable<String, Route> getRouteList() {
 		return routeList;
 	}
@@ -0,0 +1,65 @@
+package anisopedctm;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of boards
+ *
+ * Replicas of a board (same scenario, network model and demand, see Board.newReplica) for
+ * concurrent simulations. A thread acquires a board, simulates with it and releases it
+ * again; replicas are only generated if no released board is available, hence the pool
+ * holds at most as many boards as threads simulate concurrently. The template board
+ * itself is never handed out. Replicas reflect the template as of the creation of the pool;
+ * if the template changes (e.g., its demand), a new pool is needed (see isCurrent).
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class BoardPool {
+
+	private final Board template;
+	private final String templateFingerprint; //fingerprint of template at creation of pool
+
+	//released boards (most recently released first)
+	private final ConcurrentLinkedDeque<Board> idle;
+
+	//number of boards generated
+	private final AtomicInteger numBoards;
+
+	// constructor
+	public BoardPool(Board template) {
+		this.template = template;
+		templateFingerprint = template.getFingerprint();
+
+		idle = new ConcurrentLinkedDeque<Board>();
+		numBoards = new AtomicInteger();
+	}
+
+	//board for exclusive use until released
+	public Board acquire() {
+		Board board = idle.pollFirst();
+
+		if (board == null) {
+			board = template.newReplica();
+			numBoards.incrementAndGet();
+		}
+
+		return board;
+	}
+
+	public void release(Board board) {
+		idle.addFirst(board);
+	}
+
+	//true if the replicas still correspond to the template (same fingerprint)
+	public boolean isCurrent() {
+		return template.getFingerprint().equals(templateFingerprint);
+	}
+
+	public int getNumBoards() {
+		return numBoards.get();
+	}
+
+}
@@ -1,10 +1,15 @@
 package anisopedctm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
@@ -46,8 +51,20 @@ public class Calibration {
 	private Board board;
 	private Parameter param;
 	
+	//boards for concurrent simulations (replicas of board)
+	private BoardPool boardPool;
+	
+	//evaluations of the log-likelihood (shared by all boards of the calibration)
+	private ObjectiveCache objCache;
+	
+	//root searches of critical accumulations of all simulations (see Board.getNumFDSolves)
+	private long numFDSolves;
+	private long numFDIter;
+	private long numFDFallbacks;
+	
 	//result of calibration
 	private PointValuePair[] calibSeries;
+	private int numReported; //number of runs of calibSeries already logged and reduced
 	private boolean invertHessianSuccessful;
 	
 	//result of cross-calibration
@@ -67,6 +84,8 @@ public class Calibration {
 		bestParam = new double[numParam];
 		
 		calibSeries = new PointValuePair[numRun];
+		
+		objCache = new ObjectiveCache(param.numerics.objectiveCacheSize, param.numerics.objectiveCacheFile);
 	}
 	
 	public double getBestLogLikelihood() {
@@ -137,6 +156,11 @@ public class Calibration {
 	
 	//derivative-free optimizer
 	private PointValuePair bobyqaOptimizer(double[] initParam) {
+		return bobyqaOptimizer(board, initParam);
+	}
+	
+	//derivative-free optimizer, simulating on simBoard
+	private PointValuePair bobyqaOptimizer(Board simBoard, double[] initParam) {
 			
 		int numInterpoltationPoints = 2*initParam.length;
 		
@@ -145,7 +169,7 @@ public class Calibration {
 	
 		MultivariateOptimizer multiVarOptimizer = new BOBYQAOptimizer(numInterpoltationPoints, initRad, stoppingRad);
 	    
-		MultivariateFunction logLikelihoodFunction = new LogLikelihoodCalculator(board);
+		MultivariateFunction logLikelihoodFunction = new LogLikelihoodCalculator(simBoard);
 	
 		PointValuePair result = multiVarOptimizer.optimize(
 				new MaxEval(1500),
@@ -166,18 +190,34 @@ public class Calibration {
 			curBoard = board;
 		}
 		
-		//returns the log-likelihood
+		//returns the log-likelihood (from the cache if the board already simulated these parameters;
+		//the board then keeps the state of its last simulation)
 		@Override
 		public double value(double[] paramVec) {
-	    	// update the board with new parameters
-			curBoard.updateParam(paramVec);
-	
-			// simulate
-			curBoard.simulate();
-	    	
-			// return log-likelihood
-			Double logLikelihood = curBoard.getLogLikelihood(); 
+			String key = ObjectiveCache.key(curBoard.getFingerprint(), paramVec);
+			
+			ObjectiveCache.Entry cached = objCache.get(key);
+			
+			Double logLikelihood;
+			
+			if (cached != null) {
+				logLikelihood = cached.logLikelihood;
+			}
+			else {
+				// update the board with new parameters
+				curBoard.updateParam(paramVec);
+				
+				// simulate
+				curBoard.simulate();
+				
+				logLikelihood = curBoard.getLogLikelihood();
+				
+				objCache.put(key, ObjectiveCache.summarize(logLikelihood, curBoard));
+				
+				addRootSearches(curBoard);
+			}
 			
+			// return log-likelihood
 			if (logLikelihood.isNaN()) {
 				return Double.NEGATIVE_INFINITY;
 			}else {
@@ -233,74 +273,124 @@ public class Calibration {
 		}
 	}
 	
-	private PointValuePair calibRandInit() {
-		//randomly generate a set of initial parameters, and use the best one
-		int numDraws = 1;
-		double[] paramDraw;
-		double[] paramInit = new double[param.getNumParam()];
-		Double logLikelihoodDraw;
-		double logLikelihoodInit = Double.NEGATIVE_INFINITY;
-		
-		MultivariateFunction logLikelihoodFunction = new LogLikelihoodCalculator(board);
-		
-		PointValuePair paramLocOpt = null;
-		
-		//for some awkward initial parameters, some iteration runs fail and are redone.
-		boolean runSuccessful = false;
-
-		while (runSuccessful == false) {
-			try{
-				//draw initial parameter
-				for (int i=0; i<numDraws; i++) {
-					//randomly generate initial parameter estimate
-					paramDraw = param.getRandomParameter();
-					
-					//check if initial solution is feasible
-					logLikelihoodDraw = logLikelihoodFunction.value(paramDraw);
-					
-					//if infeasible, redraw
-					while (logLikelihoodDraw.isNaN() || logLikelihoodDraw.isInfinite()) {
-						paramDraw = param.getRandomParameter();
-						logLikelihoodDraw = logLikelihoodFunction.value(paramDraw);
+	//log-likelihood of parameter vector, NaN if the simulation fails
+	private double screenLogLikelihood(Board simBoard, double[] paramVec) {
+		try {
+			return new LogLikelihoodCalculator(simBoard).value(paramVec);
+		}
+		catch (Exception e) {
+			return Double.NaN;
+		}
+	}
+	
+	//randomly draw num initial parameters with finite log-likelihood. Candidates are drawn
+	//in batches and screened concurrently on boards of the pool; feasible candidates are
+	//used in the order in which they were drawn.
+	private double[][] drawFeasibleParam(ForkJoinPool executor, int num) {
+		double[][] paramFeasible = new double[num][];
+		int numFeasible = 0;
+		int numDrawn = 0;
+		
+		while (numFeasible < num) {
+			int batchSize = Math.max(num - numFeasible, param.numerics.numThreads);
+			
+			ArrayList<double[]> candidates = new ArrayList<double[]>(batchSize);
+			ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>(batchSize);
+			
+			for (int i=0; i<batchSize; i++) {
+				double[] paramDraw = param.getRandomParameter();
+				
+				candidates.add(paramDraw);
+				tasks.add(() -> {
+					Board simBoard = boardPool.acquire();
+					try {
+						return screenLogLikelihood(simBoard, paramDraw);
 					}
-					
-					//if best draw so far, use as new init parameter set
-					if (logLikelihoodDraw > logLikelihoodInit) {
-						paramInit = paramDraw;
-						logLikelihoodInit = logLikelihoodDraw;
+					finally {
+						boardPool.release(simBoard);
 					}
-					
-				}
-				
-				//compute corresponding local optimum
-				paramLocOpt = bobyqaOptimizer(paramInit);
-				
-				//if no exception raised so far, local optimum search successful
-				runSuccessful = true;
+				});
 			}
-			catch (Exception e) {
-				System.out.println("Iteration raised " + e.toString() +". Run redone.");
+			numDrawn += batchSize;
+			
+			ArrayList<Double> logLikelihoods = runAll(executor, tasks);
+			
+			for (int i=0; i<batchSize && numFeasible < num; i++) {
+				double logLikelihoodDraw = logLikelihoods.get(i);
+				
+				if (!Double.isNaN(logLikelihoodDraw) && !Double.isInfinite(logLikelihoodDraw)) {
+					paramFeasible[numFeasible] = candidates.get(i);
+					numFeasible++;
+				}
 			}
 		}
-		return paramLocOpt;
+		
+		System.out.println(num + " feasible initial parameters out of " + numDrawn + " draws.");
+		
+		return paramFeasible;
 	}
 	
-	public double[] calibMultInit() {
-		
-		bestLogLikelihood = Double.NEGATIVE_INFINITY;
+	//randomly draw an initial parameter with finite log-likelihood, simulating on simBoard
+	private double[] drawFeasibleParam(Board simBoard) {
+		double[] paramDraw = param.getRandomParameter();
+		double logLikelihoodDraw = screenLogLikelihood(simBoard, paramDraw);
+		
+		//if infeasible, redraw
+		while (Double.isNaN(logLikelihoodDraw) || Double.isInfinite(logLikelihoodDraw)) {
+			paramDraw = param.getRandomParameter();
+			logLikelihoodDraw = screenLogLikelihood(simBoard, paramDraw);
+		}
 		
-		PointValuePair curCalibration;
-		double curLogLikelihood;
+		return paramDraw;
+	}
+	
+	//local optimum of run, starting from paramInit, on a board of the pool
+	private PointValuePair calibRandInit(int run, double[] paramInit) {
+		Board simBoard = boardPool.acquire();
 		
-		for (int i=0; i<numIter; i++) {
-			curCalibration = calibRandInit();
+		try {
+			double[] paramStart = paramInit;
 			
-			calibSeries[i] = curCalibration;
+			//for some awkward initial parameters, some iteration runs fail and are redone
+			//from a new initial parameter
+			while (true) {
+				try {
+					return bobyqaOptimizer(simBoard, paramStart);
+				}
+				catch (Exception e) {
+					System.out.println("Iteration " + (run+1) + " raised " + e.toString() +". Run redone.");
+					
+					paramStart = drawFeasibleParam(simBoard);
+				}
+			}
+		}
+		finally {
+			boardPool.release(simBoard);
+		}
+	}
+	
+	//store the result of run; results are logged and reduced in the order of the runs (once all
+	//previous runs are completed), hence log and optimum do not depend on the thread schedule
+	private synchronized void reportLocalOpt(int run, PointValuePair localOpt) {
+		calibSeries[run] = localOpt;
+		
+		while (numReported < numIter && calibSeries[numReported] != null) {
+			PointValuePair curCalibration = calibSeries[numReported];
+			double curLogLikelihood = curCalibration.getValue();
 			
-			curLogLikelihood = curCalibration.getValue();
+			numReported++;
 			
 			//DEBUG
-			System.out.print("Calib " + (i+1) + "/" + numIter + " -- log-likelihood: " + curLogLikelihood + "; param: ");
+			System.out.print("Calib " + numReported + "/" + numIter + " -- log-likelihood: " + curLogLikelihood);
+			
+			//travel times of local optimum (if still cached)
+			ObjectiveCache.Entry cached = objCache.peek(
+					ObjectiveCache.key(board.getFingerprint(), curCalibration.getPoint()));
+			if (cached != null) {
+				System.out.print("; travel time: " + cached.travelTimeMean + " (std. dev. " +
+						cached.travelTimeStdDev + ")");
+			}
+			System.out.print("; param: ");
 			for (int j=0; j<param.getNumParam(); j++) {
 				System.out.print(curCalibration.getPoint()[j]);
 				if (j < param.getNumParam() -1) {
@@ -314,22 +404,107 @@ public class Calibration {
 				bestLogLikelihood = curLogLikelihood;
 				bestParam = curCalibration.getPoint();
 			}
+		}
+	}
+	
+	//calibrate from numIter random initial parameters. The local optimizations are independent
+	//and run concurrently (numerics.numThreads threads), each on a board of the pool.
+	public double[] calibMultInit() {
+		
+		bestLogLikelihood = Double.NEGATIVE_INFINITY;
+		
+		Arrays.fill(calibSeries, null);
+		numReported = 0;
+		
+		//replicas of the board with its current demand
+		boardPool = new BoardPool(board);
+		
+		ForkJoinPool executor = new ForkJoinPool(param.numerics.numThreads);
+		
+		try {
+			double[][] paramInit = drawFeasibleParam(executor, numIter);
+			
+			ArrayList<Callable<PointValuePair>> tasks = new ArrayList<Callable<PointValuePair>>(numIter);
 			
+			for (int i=0; i<numIter; i++) {
+				final int run = i;
+				
+				tasks.add(() -> {
+					PointValuePair localOpt = calibRandInit(run, paramInit[run]);
+					reportLocalOpt(run, localOpt);
+					return localOpt;
+				});
+			}
+			
+			runAll(executor, tasks);
+		}
+		finally {
+			executor.shutdown();
 		}
 		
+		System.out.println(numIter + " local optimizations on " + boardPool.getNumBoards() + " boards.");
+		
 		return bestParam;
 	}
 	
+	//execute tasks on executor and wait for all of them; results in the order of the tasks
+	private <T> ArrayList<T> runAll(ForkJoinPool executor, ArrayList<Callable<T>> tasks) {
+		ArrayList<T> results = new ArrayList<T>(tasks.size());
+		
+		try {
+			for (Future<T> result : executor.invokeAll(tasks)) {
+				results.add(result.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Calibration interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Calibration failed: " + e.getCause(), e.getCause());
+		}
+		
+		return results;
+	}
+	
 	public void generateCalibStatistics(String fileName) {
 		System.out.println("Computing Hessian.");
 		//compute calibration statistics
-		double stepSize = Parameter.stepSizeHessian;
+		double stepSize = param.numerics.stepSizeHessian;
 		computeCalibStatistics(bestParam, stepSize);
 		
 		String fileNameFull = fileName+getFileNameAppendix();
 		
 		//write statistics to file
 		board.getOutput().writeCalibStatistics(this, param, board.getPedList(), fileNameFull );
+		
+		reportObjectiveCache();
+		reportRootSearches();
+	}
+	
+	//add root searches of the last simulation of simBoard (boards of concurrent runs)
+	private synchronized void addRootSearches(Board simBoard) {
+		numFDSolves += simBoard.getNumFDSolves();
+		numFDIter += simBoard.getNumFDIter();
+		numFDFallbacks += simBoard.getNumFDFallbacks();
+	}
+	
+	//print number and iterations of the root searches of critical accumulations (if any)
+	private synchronized void reportRootSearches() {
+		if (numFDSolves > 0) {
+			System.out.println("Critical accumulation: " + numFDSolves + " root searches, " +
+					String.format("%.2f", (double) numFDIter/numFDSolves) + " iterations per search, " +
+					numFDFallbacks + " fallbacks to bisection.");
+		}
+	}
+	
+	//print hit rate of the log-likelihood cache and append new evaluations to its file
+	private void reportObjectiveCache() {
+		System.out.println("Log-likelihood cache: " + objCache.getNumHits() + " hits in " +
+				objCache.getNumLookups() + " evaluations (hit rate " +
+				String.format("%.1f", 100.0*objCache.getHitRate()) + "%), " + objCache.size() + " entries.");
+		
+		objCache.save();
 	}
 	
 	//stores discrete observed and estimated travel time distribution (e.g. for a route)
@@ -538,14 +713,12 @@ public class Calibration {
 	private void computeCalibStatistics(double[] paramVec, double stepSize)
 	{
 
-		MultivariateFunction logLikelihoodFun = new LogLikelihoodCalculator(board);
-
 		/*
 		 * Compute Hessian of log-likelihood and Cramer-Rao bound
 		 */
 		
 		hessianLL = MatrixUtils.createRealMatrix(
-					computeHessian(logLikelihoodFun, paramVec, stepSize)
+					computeHessian(paramVec, stepSize)
 				);
 		
 		try {
@@ -603,88 +776,115 @@ public class Calibration {
 	}
 	
 	/*
-	 * Compute Hessian using central differences.
+	 * Compute Hessian using central differences. Entry (i,j) is the central difference in
+	 * direction i of the central differences in direction j,
+	 *   H_ij = (f(x+h_i+h_j) - f(x+h_i-h_j) - f(x-h_i+h_j) + f(x-h_i-h_j))/(4 h_i h_j),
+	 * which reduces to x-2h_i, x and x+2h_i on the diagonal. The matrix is symmetric, hence
+	 * only entries i <= j are computed. Their distinct stencil points (2n^2+1 for n parameters,
+	 * instead of 4n^2 evaluations of two gradients per row) are simulated concurrently on
+	 * boards of the pool.
 	 */
-	private double[][] computeHessian(MultivariateFunction multiVarFunc, double[] paramVec, double stepSize)
-	{		
+	private double[][] computeHessian(double[] paramVec, double stepSize)
+	{
 		//initialize Hessian
 		double[][] hessian = new double[numParam][numParam];
 		
-		//first point (left) and its derivative
-		double[] x1;
-		double[] df1;
-		
-		//second point (right) and its derivative
-		double[] x2;
-		double[] df2;
+		//step size of each parameter; ensure that parameter values remain positive
+		double[] step = new double[numParam];
 		
-		//for each row of Hessian
-		for (int i=0; i<numParam; i++)
-		{	
-					
-			//derivative at first point (left)
-			x1 = paramVec.clone();
+		for (int i=0; i<numParam; i++) {
+			step[i] = stepSize;
 			
-			//ensure that parameter value remains positive
-			while (x1[i] - stepSize <= 0.0) {
-				stepSize = 0.5*stepSize;
+			while (paramVec[i] - 2.0*step[i] <= 0.0) {
+				step[i] = 0.5*step[i];
 			}
-			x1[i] = x1[i] - stepSize;
-			df1 = computeGrad(multiVarFunc, x1, stepSize);
-			
-			//derivative at second point (right)
-			x2 = paramVec.clone();
-			x2[i] = x2[i] + stepSize;
-			df2 = computeGrad(multiVarFunc, x2, stepSize);
-			
-			//differentiate between the two derivatives and assign as row i to Hessian
-			for (int j=0; j<numParam; j++){
-				hessian[i][j] = (df2[j] - df1[j])/(2.0*stepSize);
+		}
+		
+		//distinct stencil points (by offset, in multiples of the step sizes)
+		Hashtable<String, Integer> pointIndex = new Hashtable<String, Integer>();
+		ArrayList<double[]> points = new ArrayList<double[]>();
+		
+		//stencil of entry (i,j): indices of points x+h_i+h_j, x+h_i-h_j, x-h_i+h_j, x-h_i-h_j
+		int[][][] stencil = new int[numParam][numParam][];
+		
+		for (int i=0; i<numParam; i++) {
+			for (int j=i; j<numParam; j++) {
+				stencil[i][j] = new int[] {
+						addStencilPoint(pointIndex, points, paramVec, step, i, 1, j, 1),
+						addStencilPoint(pointIndex, points, paramVec, step, i, 1, j, -1),
+						addStencilPoint(pointIndex, points, paramVec, step, i, -1, j, 1),
+						addStencilPoint(pointIndex, points, paramVec, step, i, -1, j, -1) };
+			}
+		}
+		
+		//evaluate objective function at all stencil points (on replicas of the board with its current demand)
+		if (boardPool == null || !boardPool.isCurrent()) {
+			boardPool = new BoardPool(board);
+		}
+		
+		ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>(points.size());
+		
+		for (double[] point : points) {
+			tasks.add(() -> {
+				Board simBoard = boardPool.acquire();
+				try {
+					return new LogLikelihoodCalculator(simBoard).value(point);
+				}
+				finally {
+					boardPool.release(simBoard);
+				}
+			});
+		}
+		
+		ForkJoinPool executor = new ForkJoinPool(param.numerics.numThreads);
+		
+		ArrayList<Double> values;
+		
+		try {
+			values = runAll(executor, tasks);
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		//differentiate the central differences in direction j and fill both (i,j) and (j,i)
+		for (int i=0; i<numParam; i++) {
+			for (int j=i; j<numParam; j++) {
+				int[] pts = stencil[i][j];
+				
+				double df2 = (values.get(pts[0]) - values.get(pts[1]))/(2.0*step[j]);
+				double df1 = (values.get(pts[2]) - values.get(pts[3]))/(2.0*step[j]);
+				
+				hessian[i][j] = (df2 - df1)/(2.0*step[i]);
+				hessian[j][i] = hessian[i][j];
 			}
 		}
 		
 		return hessian;
 	}
-
 	
-	/*
-	 * Compute gradient using central differences
-	 */
-	private double [] computeGrad(MultivariateFunction multiVarFunc, double[] paramVec, double stepSize)
-	{		
-		double[] df = new double[numParam];
+	//index of stencil point x + signI*h_i + signJ*h_j; points with equal offsets are added once
+	private int addStencilPoint(Hashtable<String, Integer> pointIndex, ArrayList<double[]> points,
+			double[] paramVec, double[] step, int i, int signI, int j, int signJ)
+	{
+		int[] offset = new int[numParam];
+		offset[i] += signI;
+		offset[j] += signJ;
 		
-		//left parameter point and corresponding function value
-		double[] x1;
-		double y1;
+		String key = Arrays.toString(offset);
 		
-		//right parameter point and corresponding function value
-		double[] x2;
-		double y2;
-
-		// for each dimension of objective function
-		for (int i=0; i<numParam; i++)
-		{	
-			x1 = paramVec.clone();
-			x2 = paramVec.clone();
+		if (!pointIndex.containsKey(key)) {
+			double[] point = new double[numParam];
 			
-			//vary variables by step size (left and right)
-			//ensure that parameter value remains positive
-			while (x1[i] - stepSize <= 0.0) {
-				stepSize = 0.5*stepSize;
+			for (int k=0; k<numParam; k++) {
+				point[k] = paramVec[k] + offset[k]*step[k];
 			}
-			x1[i] = x1[i] - stepSize;
-			x2[i] = x2[i] + stepSize;
-			
-			//evaluate objective function at the left and right points
-			y1 = multiVarFunc.value(x1);
-			y2 = multiVarFunc.value(x2);
 			
-			//calculate the slope for dimension i
-			df[i] = (y2 - y1) / (2.0 * stepSize);
+			pointIndex.put(key, points.size());
+			points.add(point);
 		}
 		
-		return df;
+		return pointIndex.get(key);
 	}
 	
 	private String getFileNameAppendix() {
@@ -27,6 +27,17 @@ public class Cell{
 	//cell accumulation (for visualization and calibration only)
 	private double totAcc;
 
+	//compiled network and dense index of cell
+	private Network network;
+	private int index;
+
+	//FD slot of each local link (in order of local links)
+	private int[] linkSlot;
+
+	//free-flow cell (infinite area, e.g., gates): critical values are constant and written once,
+	//link speeds only depend on whether the cell is empty; the fundamental diagram is bypassed
+	private boolean freeFlow;
+
 	///////////////////////////////////////////////////////////////////////////////////////
 
 	// Only for the visualization
@@ -50,70 +61,160 @@ public class Cell{
 
 		localLinkIDs = new ArrayList<Integer>();
 
+		funDiag = newFunDiag(param, areaSize);
+
+		adjCellPos = new Hashtable<String, String>();
+
+		adjCellNodes = new Hashtable<String, Integer>();
+	}
+
+	/**
+	 * constructor: copy of a cell loaded by Input (same area, coordinates and local links),
+	 * with a new fundamental diagram according to param
+	 */
+	public Cell(Cell template, Parameter param) {
+		zone = template.zone;
+		areaSize = template.areaSize;
+
+		coordinates = template.coordinates;
+
+		//local links are not changed after loading
+		localLinkIDs = template.localLinkIDs;
+
+		funDiag = newFunDiag(param, areaSize);
+		funDiag.addLinks(template.funDiag);
+
+		adjCellPos = new Hashtable<String, String>();
+
+		adjCellNodes = new Hashtable<String, Integer>();
+	}
+
+	//generate fundamental diagram of cell according to parameters (without links)
+	private static FunDiag newFunDiag(Parameter param, double areaSize) {
 		if(param.getFunDiagName().equals("Weidmann")) {
-			funDiag = new FunDiagWeidmann(param, areaSize);
+			return new FunDiagWeidmann(param, areaSize);
 		}
 		else if(param.getFunDiagName().equals("Drake")) {
-			funDiag = new FunDiagDrake(param, areaSize);
+			return new FunDiagDrake(param, areaSize);
 		}
 		else if(param.getFunDiagName().equals("SbFD")) {
-			funDiag = new FunDiagSbFD(param, areaSize);
+			return new FunDiagSbFD(param, areaSize);
 		}
 		else if(param.getFunDiagName().equals("Zero")) {
-			funDiag = new FunDiagZero(param, areaSize);
+			return new FunDiagZero(param, areaSize);
 		} else {
 			throw new IllegalStateException("No fundamental diagram has been created.");
 		}
+	}
 
-		adjCellPos = new Hashtable<String, String>();
+	//replace fundamental diagram by a new one according to current parameters (e.g., during calibration)
+	//NOTE: cell needs be bound to the compiled network
+	public void updateFunDiag(Parameter param) {
+		FunDiag newDiag = newFunDiag(param, areaSize);
 
-		adjCellNodes = new Hashtable<String, Integer>();
+		for (int k = network.cellLinkPtr[index]; k < network.cellLinkPtr[index+1]; k++) {
+			newDiag.addLink(network.links[network.cellLinks[k]].orientation);
+		}
+
+		funDiag = newDiag;
 	}
 
 	public double getTotAcc() {
 		return totAcc;
 	}
 
+	public ArrayList<Integer> getLocalLinkIDs() {
+		return localLinkIDs;
+	}
+
+	//bind cell to its dense index in the compiled network
+	public void bind(Network net, int idx) {
+		network = net;
+		index = idx;
+
+		linkSlot = new int[localLinkIDs.size()];
+		for (int k = net.cellLinkPtr[idx]; k < net.cellLinkPtr[idx+1]; k++) {
+			linkSlot[k - net.cellLinkPtr[idx]] = net.links[net.cellLinks[k]].orientation.ordinal();
+		}
+
+		freeFlow = Double.isInfinite(areaSize);
+
+		if (freeFlow) {
+			for (int k = net.cellLinkPtr[idx]; k < net.cellLinkPtr[idx+1]; k++) {
+				net.critAcc[net.cellLinks[k]] = Double.POSITIVE_INFINITY;
+				net.critVelNd[net.cellLinks[k]] = 1.0;
+			}
+		}
+	}
+
+	public boolean isFreeFlow() {
+		return freeFlow;
+	}
+
 	//add link to local index, add link direction to FD
-	public void addLocalLink(int linkID, String lnkName) {
+	public void addLocalLink(int linkID, Orientation orient) {
 		localLinkIDs.add(linkID);
-		funDiag.addLinkName(lnkName);
+		funDiag.addLink(orient);
 	}
 
 	//compute accumulation, prevailing and critical speed on all links
-	public void computeAccVelCritVel(Hashtable<Integer, Link> linkList) {
+	public void computeAccVelCritVel() {
+		if (freeFlow) {
+			computeFreeFlowAccVel();
+			return;
+		}
+
 		//set link and cell accumulation
-		setLinkCellAcc(linkList);
+		setLinkCellAcc();
 
 		//compute and update link velocities
-		setLinkVel(linkList);
+		setLinkVel();
 
 		//compute and update critical link accumulation and velocities
-		setCritLinkAccVel(linkList);
+		setCritLinkAccVel();
+	}
+
+	//compute link and cell accumulation and set link velocities of a free-flow cell
+	private void computeFreeFlowAccVel() {
+		totAcc = 0.0;
+
+		for (int k = network.cellLinkPtr[index]; k < network.cellLinkPtr[index+1]; k++) {
+			Link curLink = network.links[network.cellLinks[k]];
+
+			curLink.setTotAcc();
+
+			totAcc += curLink.getTotAcc();
+		}
+
+		double velocity = funDiag.getFreeFlowVel(totAcc);
+
+		for (int k = network.cellLinkPtr[index]; k < network.cellLinkPtr[index+1]; k++) {
+			network.velNd[network.cellLinks[k]] = velocity;
+		}
 	}
 
 	// Compute the link and the cell accumulation
-	public void setLinkCellAcc(Hashtable<Integer,Link> linkList) {
+	public void setLinkCellAcc() {
 		//re-initialize accumulation vector
 		funDiag.clearLinkAcc();
 
 		//re-initialize cell accumulation
 		totAcc = 0.0;
 
-		//add links with non-zero accumulation to linkAcc
-		for (int linkID : localLinkIDs) {
+		int first = network.cellLinkPtr[index]; //position of first local link in CSR
 
-			//get orientation of current link
-			String linkStreamOrient = linkList.get(linkID).linkOrient;
+		//add links with non-zero accumulation to linkAcc
+		for (int k = first; k < network.cellLinkPtr[index+1]; k++) {
+			Link curLink = network.links[network.cellLinks[k]];
 
 			//set total accumulation on current link
-			linkList.get(linkID).setTotAcc();
+			curLink.setTotAcc();
 
 			//get total accumulation on current link
-			double linkAcc = linkList.get(linkID).getTotAcc();
+			double linkAcc = curLink.getTotAcc();
 
 			//add link accumulation to corresponding link
-			funDiag.addToLink(linkStreamOrient,linkAcc);
+			funDiag.addToLink(linkSlot[k - first], linkAcc);
 
 			//add link accumulation to cell accumulation
 			totAcc += linkAcc;
@@ -122,64 +223,41 @@ public class Cell{
 
 	//compute and set link velocities
 	//NOTE: link accumulations need be up-to-date (use setLinkCellAcc())
-	public void setLinkVel(Hashtable<Integer,Link> linkList) {
+	public void setLinkVel() {
 
 		//invoke fundamental diagram
 		funDiag.setLinkVel();
 
-		//TODO: needs to be rewritten
-
-		String lnkName; //string of current link (orientation)
-		double linkVel; //link velocity associated with current link
+		int first = network.cellLinkPtr[index]; //position of first local link in CSR
 
 		//for each link, set current velocity
-		for (int linkID : localLinkIDs) {
-
-			//get orientation of current link
-			lnkName = linkList.get(linkID).linkOrient;
-
-			//infer link velocity
-			linkVel = funDiag.getLinkVel(lnkName);
-
-			//store link velocity in link
-			linkList.get(linkID).setVelNd(linkVel);
+		for (int k = first; k < network.cellLinkPtr[index+1]; k++) {
+			//infer link velocity from orientation and store it
+			network.velNd[network.cellLinks[k]] = funDiag.getLinkVel(linkSlot[k - first]);
 		}
 	}
 
 	//compute and set critical link accumulations and critical link velocities
 	//NOTE: link accumulations and velocities need be up-to-date (use computeLinkVel())
-	public void setCritLinkAccVel(Hashtable<Integer,Link> linkList) {
+	public void setCritLinkAccVel() {
 
 		//invoke fundamental diagram
 		funDiag.setCritLinkAccVel();
 
-		//TODO: rewrite the following
-
-		Link curLink; //current link
-
-		String lnkName; //string of current link (orientation)
-		double linkCritAcc; //critical link accumulation
-		double linkCritVel; //critical link velocity
+		int first = network.cellLinkPtr[index]; //position of first local link in CSR
+		int link; //dense index of current link
+		int slot; //FD slot of current link (orientation)
 
 		//for each link, set critical accumulation and velocity
-		for (int linkID : localLinkIDs) {
-			//get current link
-			curLink = linkList.get(linkID);
-
-			//get link name of current link
-			lnkName = curLink.linkOrient;
-
-			//get critical link accumulation
-			linkCritAcc = funDiag.getCritLinkAcc(lnkName);
-
-			//get non-dimensional critial link velocity
-			linkCritVel = funDiag.getCritLinkVel(lnkName);
+		for (int k = first; k < network.cellLinkPtr[index+1]; k++) {
+			link = network.cellLinks[k];
+			slot = linkSlot[k - first];
 
 			//assign critical link accumulation using a homogeneous distribution across links
-			curLink.setCritAcc(linkCritAcc);
+			network.critAcc[link] = funDiag.getCritLinkAcc(slot);
 
 			//assign non-dimensional critical link velocity
-			curLink.setCritVelNd(linkCritVel);
+			network.critVelNd[link] = funDiag.getCritLinkVel(slot);
 		}
 	}
 
@@ -230,7 +308,8 @@ public class Cell{
 
 		String lnkName; //Name of the current link (using the orientation)
 
-		HashSet<String> activeLinks = funDiag.getActLinks();
+		//the fundamental diagram of free-flow cells is not evaluated
+		HashSet<String> activeLinks = freeFlow ? null : funDiag.getActLinks();
 
 		for(int linkID : localLinkIDs)
 		{
@@ -242,7 +321,13 @@ public class Cell{
 				//get link name of current link
 				lnkName = curLink.linkOrient;
 
-				if(activeLinks.contains(lnkName))
+				if(freeFlow && curLink.getTotAcc() > 0.0)
+				{
+					streamVel = (streamVel*nbrLinkInStream + curLink.getVelNd())/(nbrLinkInStream+1) ;
+
+					nbrLinkInStream = nbrLinkInStream + 1;
+				}
+				else if(!freeFlow && activeLinks.contains(lnkName))
 				{
 					streamVel = (streamVel*nbrLinkInStream + funDiag.getLinkVel(lnkName))/(nbrLinkInStream+1) ;
 
@@ -0,0 +1,272 @@
+package anisopedctm;
+
+import java.util.Arrays;
+
+/**
+ * Fragment table of a link
+ *
+ * Primitive map from groupID to fragment size. Each fragment owns a row of sending
+ * capacities, one slot per out link of the destination node of the link (NaN if the out
+ * link is not a target of the fragment).
+ *
+ * The table is a chained hash table laid out as java.util.Hashtable (11 initial buckets,
+ * load factor 0.75, bucket of groupID % number of buckets, new entries at the head of their
+ * bucket, same rehashing). Iterating from first() over next() visits the fragments in the
+ * order of the enumeration of a Hashtable<Integer, Fragment> which has seen the same
+ * insertions and removals, the order in which fragments have always been processed.
+ * Entries are referred to by their position in the primitive columns; positions of removed
+ * entries are reused.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class FragmentTable {
+
+	private static final int NONE = -1; //marker of empty buckets and chain ends
+	private static final int INIT_BUCKETS = 11; //initial number of buckets (as Hashtable)
+	private static final float LOAD_FACTOR = 0.75f; //load factor (as Hashtable)
+	private static final int INIT_CAPACITY = 4; //initial number of entries
+
+	private final int numSlots; //number of sending capacity slots per fragment
+
+	private int size; //number of fragments
+	private int numBuckets; //number of buckets in use
+	private int threshold; //size at which the buckets are rehashed before an insertion
+	private int[] buckets; //first entry of bucket (buckets 0..numBuckets-1 in use)
+	private int[] oldBuckets; //buckets before rehashing
+
+	private int numUsed; //number of entry positions used so far
+	private int free; //first free entry position (chained by next), NONE if none
+	private int[] next; //next entry of bucket chain, NONE at the end
+	private int[] groupIDs; //groupID of entry
+	private double[] numPeople; //size of fragment
+	private double[] sendCap; //sending capacities (numSlots per entry)
+
+	// constructor
+	public FragmentTable(int numSlots) {
+		this.numSlots = numSlots;
+
+		buckets = new int[INIT_BUCKETS];
+		oldBuckets = new int[0];
+
+		next = new int[INIT_CAPACITY];
+		groupIDs = new int[INIT_CAPACITY];
+		numPeople = new double[INIT_CAPACITY];
+		sendCap = new double[INIT_CAPACITY*numSlots];
+
+		reset();
+	}
+
+	//number of fragments
+	public int size() {
+		return size;
+	}
+
+	//number of sending capacity slots per fragment
+	public int getNumSlots() {
+		return numSlots;
+	}
+
+	//first entry in iteration order, NONE (negative) if the table is empty
+	public int first() {
+		return firstInBuckets(numBuckets);
+	}
+
+	//entry following entry e in iteration order, NONE (negative) if e is the last one
+	//(e must still be in the table; to remove e while iterating, get its successor before)
+	public int next(int e) {
+		if (next[e] != NONE) {
+			return next[e];
+		}
+
+		return firstInBuckets(bucket(groupIDs[e]));
+	}
+
+	//groupID of entry e
+	public int getGroupID(int e) {
+		return groupIDs[e];
+	}
+
+	//size of fragment of entry e
+	public double getNumPeople(int e) {
+		return numPeople[e];
+	}
+
+	public void setNumPeople(int e, double d) {
+		numPeople[e] = d;
+	}
+
+	//sending capacity of fragment of entry e towards out link slot
+	public double getSendCap(int e, int slot) {
+		return sendCap[e*numSlots + slot];
+	}
+
+	public void setSendCap(int e, int slot, double d) {
+		sendCap[e*numSlots + slot] = d;
+	}
+
+	//reset all sending capacities (no target link)
+	public void resetSendCap() {
+		Arrays.fill(sendCap, 0, numUsed*numSlots, Double.NaN);
+	}
+
+	//entry of groupID, NONE (negative) if not existing
+	public int find(int groupID) {
+		for (int e = buckets[bucket(groupID)]; e != NONE; e = next[e]) {
+			if (groupIDs[e] == groupID) {
+				return e;
+			}
+		}
+
+		return NONE;
+	}
+
+	//add people to fragment of groupID; generate new fragment if necessary
+	public void add(int groupID, double d) {
+		int e = find(groupID);
+
+		if (e != NONE) {
+			numPeople[e] = numPeople[e] + d;
+			return;
+		}
+
+		if (size >= threshold) {
+			rehash();
+		}
+
+		e = newEntry();
+		groupIDs[e] = groupID;
+		numPeople[e] = d;
+		Arrays.fill(sendCap, e*numSlots, (e+1)*numSlots, Double.NaN);
+
+		//insert at head of bucket
+		int b = bucket(groupID);
+		next[e] = buckets[b];
+		buckets[b] = e;
+
+		size++;
+	}
+
+	//remove fragment of entry e
+	public void remove(int e) {
+		int b = bucket(groupIDs[e]);
+
+		if (buckets[b] == e) {
+			buckets[b] = next[e];
+		} else {
+			int pred = buckets[b];
+
+			while (next[pred] != e) {
+				pred = next[pred];
+			}
+
+			next[pred] = next[e];
+		}
+
+		next[e] = free;
+		free = e;
+
+		size--;
+	}
+
+	//remove all fragments (the number of buckets is kept, as by Hashtable.clear)
+	public void clear() {
+		Arrays.fill(buckets, 0, numBuckets, NONE);
+
+		size = 0;
+		numUsed = 0;
+		free = NONE;
+	}
+
+	//remove all fragments and return to the initial number of buckets (as a new table)
+	public void reset() {
+		numBuckets = INIT_BUCKETS;
+		threshold = (int) (INIT_BUCKETS*LOAD_FACTOR);
+
+		clear();
+	}
+
+	//sum of all fragment sizes (in iteration order)
+	public double totNumPeople() {
+		double tot = 0.0;
+
+		for (int e = first(); e != NONE; e = next(e)) {
+			tot += numPeople[e];
+		}
+
+		return tot;
+	}
+
+	//bucket of groupID
+	private int bucket(int groupID) {
+		return (groupID & 0x7FFFFFFF) % numBuckets;
+	}
+
+	//first entry of the buckets below bucket b (visited from the last bucket to the first one)
+	private int firstInBuckets(int b) {
+		while (b > 0) {
+			b--;
+
+			if (buckets[b] != NONE) {
+				return buckets[b];
+			}
+		}
+
+		return NONE;
+	}
+
+	//position of a new entry
+	private int newEntry() {
+		if (free != NONE) {
+			int e = free;
+			free = next[e];
+			return e;
+		}
+
+		if (numUsed == groupIDs.length) {
+			int capacity = 2*groupIDs.length;
+
+			next = Arrays.copyOf(next, capacity);
+			groupIDs = Arrays.copyOf(groupIDs, capacity);
+			numPeople = Arrays.copyOf(numPeople, capacity);
+			sendCap = Arrays.copyOf(sendCap, capacity*numSlots);
+		}
+
+		return numUsed++;
+	}
+
+	//double the number of buckets (plus one) and redistribute the entries as Hashtable.rehash:
+	//buckets are emptied from the last one to the first one, each entry is moved to the head
+	//of its new bucket
+	private void rehash() {
+		int oldNumBuckets = numBuckets;
+
+		numBuckets = 2*oldNumBuckets + 1;
+		threshold = (int) (numBuckets*LOAD_FACTOR);
+
+		if (buckets.length < numBuckets) {
+			//the former bucket array holds the old buckets
+			oldBuckets = buckets;
+			buckets = new int[numBuckets];
+		} else {
+			System.arraycopy(buckets, 0, oldBuckets, 0, oldNumBuckets);
+		}
+		Arrays.fill(buckets, 0, numBuckets, NONE);
+
+		for (int i = oldNumBuckets - 1; i >= 0; i--) {
+			int e = oldBuckets[i];
+
+			while (e != NONE) {
+				int following = next[e];
+				int b = bucket(groupIDs[e]);
+
+				next[e] = buckets[b];
+				buckets[b] = e;
+
+				e = following;
+			}
+		}
+	}
+
+}
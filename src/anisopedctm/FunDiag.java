@@ -1,10 +1,8 @@
 package anisopedctm;
 
-import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.List;
 
 /**
  * Abstract class representing a fundamental diagram
@@ -26,21 +24,19 @@ abstract class FunDiag {
 	//cell properties
 	protected double cellArea;
 
-	//names of links relevant for current cell
-	protected List<String> linkNames;
+	//orientations of links relevant for current cell (bitmask, bit = ordinal of orientation)
+	protected int linkMask;
 
-	//properties of links (N->E, S->W, W->E, etc.)
-	protected Hashtable<String, Double> linkAcc; //accumulation
-	protected Hashtable<String, Double> linkVel; //non-dimensional velocity
+	//orientations with positive accumulation (bitmask)
+	protected int actMask;
 
-	//theoretical properties of critical links
-	protected Hashtable<String, Double> critLinkAcc; // critical accumulation
-	protected Hashtable<String, Double> critLinkVel; // critical non-dimensional velocity
+	//properties of links (N->E, S->W, W->E, etc.), indexed by ordinal of orientation
+	protected final double[] linkAcc = new double[Orientation.NUM]; //accumulation
+	protected final double[] linkVel = new double[Orientation.NUM]; //non-dimensional velocity
 
-	//currently active (i.e., non-zero) links
-	HashSet<String> actLinkKeys; //list of active (i.e., non-empty) links
-	protected int numActLinks; //number of active links
-	protected Hashtable<String,Integer> actLinkIndex; //indices of links in velNd (used for solving FD of active links)
+	//theoretical properties of critical links, indexed by ordinal of orientation
+	protected final double[] critLinkAcc = new double[Orientation.NUM]; // critical accumulation
+	protected final double[] critLinkVel = new double[Orientation.NUM]; // critical non-dimensional velocity
 
 	//derived properties
 	protected double totAcc; //total accumulation
@@ -49,81 +45,54 @@ abstract class FunDiag {
 	public FunDiag(Parameter param, double areaSize) {
 		cellArea = areaSize;
 
-		linkNames = new ArrayList<String>();
-
-		linkAcc =  new Hashtable<String, Double>();
-		linkVel = new Hashtable<String, Double>();
+		linkMask = 0;
+		actMask = 0;
+	}
 
-		critLinkAcc = new Hashtable<String, Double>();
-		critLinkVel = new Hashtable<String, Double>();
+	//add link orientation if not included
+	public void addLink(Orientation orient) {
+		linkMask |= 1 << orient.ordinal();
 	}
 
-	//add link name if not included
-	public void addLinkName(String lnkName) {
-		if (!linkNames.contains(lnkName)) {
-			linkNames.add(lnkName);
-		}
+	//add link orientations of another fundamental diagram
+	public void addLinks(FunDiag other) {
+		linkMask |= other.linkMask;
 	}
 
 	//clear linkAcc
 	public void clearLinkAcc() {
-		linkAcc.clear();
+		Arrays.fill(linkAcc, 0.0);
+		actMask = 0;
 	}
 
-	//add accumulation to link, generate new "link" if necessary
-	public void addToLink(String lnkName, double lnkAcc) {
-		if (linkAcc.containsKey(lnkName)) {
-			linkAcc.put(lnkName, linkAcc.get(lnkName) + lnkAcc);
-		} else {
-			linkAcc.put(lnkName, lnkAcc);
+	//add accumulation to link
+	public void addToLink(int orient, double lnkAcc) {
+		linkAcc[orient] += lnkAcc;
+
+		if (linkAcc[orient] > 0.0) {
+			actMask |= 1 << orient;
 		}
 	}
 
 	//get keys of active links
 	public HashSet<String> getActLinks() {
 
-		//enumeration
 		HashSet<String> actLinks = new HashSet<String>();
 
-		//loop over all links
-		Enumeration<String> linkKeys = linkAcc.keys(); //enumeration of all links
-		String curLink; //name of current link
-		double curLinkAcc; //size of current link
-
-		while(linkKeys.hasMoreElements()) {
-			 curLink = linkKeys.nextElement();
-			 curLinkAcc = linkAcc.get(curLink);
-
-			 //if current link is active, add it
-			 if (curLinkAcc > 0.0){
-				 actLinks.add(curLink);
-			}
+		//loop over active links
+		for (int m = actMask; m != 0; m &= m - 1) {
+			actLinks.add(Orientation.get(Integer.numberOfTrailingZeros(m)).label);
 		}
 
 		return actLinks;
 	}
 
-	//returns indices of link in velNd (an array of double of variable length,
-	//depending on whether links (N->E, S->W, W->E, etc.) are active)
-	protected Hashtable<String,Integer> getActLinkIndex() {
-		Hashtable<String,Integer> indexMap = new Hashtable<String,Integer>();
-
-		int i = 0; //index
-		for (String link : linkNames) {
-			if (linkAcc.get(link) > 0) {
-				indexMap.put(link, i);
-				i++;
-			}
-		}
-		return indexMap;
-	}
-
 	//computes total accumulation in cell
-	public double getTotAcc(Hashtable<String, Double> lnkAcc) {
+	public double getTotAcc() {
 		double totAcc = 0.0;
 
-		for (double lAcc : lnkAcc.values() ) {
-			totAcc += lAcc;
+		for (int m = actMask; m != 0; m &= m - 1) {
+			totAcc += linkAcc[Integer.numberOfTrailingZeros(m)];
 		}
 
 		return totAcc;
@@ -131,22 +100,51 @@ abstract class FunDiag {
 
 	//returns accumulation of given link
 	public double getLinkAcc(String lnkName) {
-		return linkAcc.get(lnkName);
+		return linkAcc[Orientation.fromLabel(lnkName).ordinal()];
 	}
 
 	//returns speed of link
 	public double getLinkVel(String lnkName) {
-		return linkVel.get(lnkName);
+		return linkVel[Orientation.fromLabel(lnkName).ordinal()];
+	}
+
+	public double getLinkVel(int orient) {
+		return linkVel[orient];
 	}
 
 	//returns critical accumulation of link
-	public double getCritLinkAcc(String lnkName) {
-		return critLinkAcc.get(lnkName);
+	public double getCritLinkAcc(int orient) {
+		return critLinkAcc[orient];
 	}
 
 	//returns critical velocity of link
-	public double getCritLinkVel(String lnkName) {
-		return critLinkVel.get(lnkName);
+	public double getCritLinkVel(int orient) {
+		return critLinkVel[orient];
+	}
+
+	//non-dimensional speed of all links of a cell with infinite area (free flow), given the total
+	//accumulation of the cell (the critical accumulation of such links is infinite, the critical speed 1)
+	public double getFreeFlowVel(double totAcc) {
+		return 1.0;
+	}
+
+	//reset state kept between evaluations (e.g., before a new simulation run)
+	public void reset() {
+	}
+
+	//number of root searches of critical accumulations since the last reset (0: no root search needed)
+	public long getNumSolves() {
+		return 0;
+	}
+
+	//number of iterations of these root searches
+	public long getNumIter() {
+		return 0;
+	}
+
+	//number of these root searches falling back to bisection
+	public long getNumFallbacks() {
+		return 0;
 	}
 
 	//ABSTRACT : update derived quantities
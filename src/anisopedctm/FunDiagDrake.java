@@ -1,5 +1,6 @@
 package anisopedctm;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -26,37 +27,34 @@ public class FunDiagDrake extends FunDiag {
 
 	//update derived quantities
 	protected void updateDerivedQuantities() {
-		actLinkKeys = getActLinks();
-		numActLinks = actLinkKeys.size();
-		actLinkIndex = getActLinkIndex(); //generate indices of active links for solving FD
-		totAcc = getTotAcc(linkAcc);
+		totAcc = getTotAcc();
 	}
 
 	//set critical accumulations and velocities for all links
 	public void setCritLinkAccVel()
 	{
 		if (Double.isInfinite(cellArea)) {
-			for (String lnk : linkNames) {
-				//add critical accumulation and velocity to corresponding hash tables
-				critLinkAcc.put(lnk, Double.POSITIVE_INFINITY);
-				critLinkVel.put(lnk, 1.0);
-			}
+			//set critical accumulation and velocity of all links
+			Arrays.fill(critLinkAcc, Double.POSITIVE_INFINITY);
+			Arrays.fill(critLinkVel, 1.0);
 		}
 		else
 		{
 			double critAcc; // critical accumulation for unidirectional flow
 			double critVel; // critical velocity for unidirectional flow
-			for (String lnk : linkNames) {
+			for (int m = linkMask; m != 0; m &= m - 1) {
+				int lnk = Integer.numberOfTrailingZeros(m);
+
 				critAcc = ComputeCritAcc(lnk);
-				critLinkAcc.put(lnk, critAcc);
+				critLinkAcc[lnk] = critAcc;
 
 				critVel = computeVelNd(critAcc);
-				critLinkVel.put(lnk, critVel);
+				critLinkVel[lnk] = critVel;
 
 				if (Double.isInfinite(critAcc) | Double.isNaN(critVel))
 				{
 					throw new IllegalArgumentException("Invalid critAcc (" + critAcc +
-							"), or critVel ("+ critVel +") on link " + lnk);
+							"), or critVel ("+ critVel +") on link " + Orientation.get(lnk).label);
 				}
 			}
 		}
@@ -64,19 +62,13 @@ public class FunDiagDrake extends FunDiag {
 
 	public void setLinkVel()
 	{
-		//clear previous record of link velocities
-		linkVel.clear();
-
 		//update various derived quantities
 		updateDerivedQuantities();
 
-		Double velocity = computeVelNd(totAcc);
+		double velocity = computeVelNd(totAcc);
 
-		//loop over all links
-		for (String curStr : linkNames) { //current link
-			//store current link speed
-			linkVel.put(curStr, velocity);
-		}
+		//store speed of all links
+		Arrays.fill(linkVel, velocity);
 	}
 
 	private double computeVelNd(double acc)
@@ -86,21 +78,14 @@ public class FunDiagDrake extends FunDiag {
 	}
 
 	// Compute the critical accumulation for a link Lambda
-	private double ComputeCritAcc(String linkLambda)
+	private double ComputeCritAcc(int linkLambda)
 	{
 		double critAcc, accOtherLinks;
 
 		if(thetaDrake!=0.0)
 		{
-			accOtherLinks = 0.0;
-
-			//loop over all links
-			for (String curLnk : linkNames) { //current link
-				if(!curLnk.equals(linkLambda)) // If this is another link than the one the FD is computed for
-				{
-					accOtherLinks += linkAcc.get(curLnk);
-				}
-			}
+			//accumulation on all other links
+			accOtherLinks = totAcc - linkAcc[linkLambda];
 
 			critAcc = -accOtherLinks/2.0 + Math.sqrt(Math.pow(accOtherLinks/2.0, 2) + Math.pow(cellArea,2.0)/(2.0*thetaDrake));
 		}
@@ -1,5 +1,6 @@
 package anisopedctm;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -18,8 +19,16 @@ public class FunDiagSbFD extends FunDiag {
 	private double beta;
 	private double theta;
 
-	//link angles (of all links)
-	private final static Hashtable<String,Integer> linkAngles = Parameter.linkAngles;
+	//anisotropy weights (1 - cos of intersection angle) between all pairs of link orientations
+	private final static double[][] angleWeight = new double[Orientation.NUM][Orientation.NUM];
+
+	static {
+		for (int a = 0; a < Orientation.NUM; a++) {
+			for (int b = 0; b < Orientation.NUM; b++) {
+				angleWeight[a][b] = 1.0 - Math.cos(interAngle(a, b));
+			}
+		}
+	}
 
 	// constructor
 	public FunDiagSbFD(Parameter param, double areaSize) {
@@ -31,17 +40,14 @@ public class FunDiagSbFD extends FunDiag {
 
 	//update derived quantities
 	protected void updateDerivedQuantities() {
-		actLinkKeys = getActLinks();
-		numActLinks = actLinkKeys.size();
-		actLinkIndex = getActLinkIndex(); //generate indices of active links for solving FD
-		totAcc = getTotAcc(linkAcc);
+		totAcc = getTotAcc();
 	}
 
 	//returns intersection angle between link A and link B in radians
-	private double interAngle(String strA, String strB) {
+	private static double interAngle(int orientA, int orientB) {
 
 		// First, we take the absolute value
-		double phi = Math.abs(linkAngles.get(strA) - linkAngles.get(strB));
+		double phi = Math.abs(Orientation.get(orientA).angle - Orientation.get(orientB).angle);
 
 		// We keep it between 0 and 360 degrees
 		phi = phi % 360;
@@ -53,27 +59,27 @@ public class FunDiagSbFD extends FunDiag {
 	public void setCritLinkAccVel()
 	{
 		if (Double.isInfinite(cellArea)) {
-			for (String lnk : linkNames) {
-				//add critical accumulation and velocity to corresponding hash tables
-				critLinkAcc.put(lnk, Double.POSITIVE_INFINITY);
-				critLinkVel.put(lnk, 1.0);
-			}
+			//set critical accumulation and velocity of all links
+			Arrays.fill(critLinkAcc, Double.POSITIVE_INFINITY);
+			Arrays.fill(critLinkVel, 1.0);
 		}
 		else
 		{
 			double critAcc; // critical accumulation for unidirectional flow
 			double critVel; // critical velocity for unidirectional flow
-			for (String lnk : linkNames) {
+			for (int m = linkMask; m != 0; m &= m - 1) {
+				int lnk = Integer.numberOfTrailingZeros(m);
+
 				critAcc = computeCritAcc(lnk);
-				critLinkAcc.put(lnk, critAcc);
+				critLinkAcc[lnk] = critAcc;
 
 				critVel = computeFD(lnk, critAcc);
-				critLinkVel.put(lnk, critVel);
+				critLinkVel[lnk] = critVel;
 
 				if (Double.isInfinite(critAcc) | Double.isNaN(critVel))
 				{
 					throw new IllegalArgumentException("Invalid critAcc (" + critAcc +
-							"), or critVel ("+ critVel +") on link " + lnk +
+							"), or critVel ("+ critVel +") on link " + Orientation.get(lnk).label +
 							" (beta: " + beta + ", theta: " + theta + ")");
 				}
 			}
@@ -82,62 +88,47 @@ public class FunDiagSbFD extends FunDiag {
 
 	public void setLinkVel()
 	{
-		//clear previous record of link velocities
-		linkVel.clear();
-
 		//update various derived quantities
 		updateDerivedQuantities();
 
-		Double velocity;
-
 		//loop over all links
-		for (String curStr : linkNames) { //current link
+		for (int m = linkMask; m != 0; m &= m - 1) { //current link
+			int curLnk = Integer.numberOfTrailingZeros(m);
 
-			velocity = computeFD(curStr, linkAcc.get(curStr));
 			//store current link speed
-			linkVel.put(curStr, velocity);
+			linkVel[curLnk] = computeFD(curLnk, linkAcc[curLnk]);
 		}
 	}
 
-	//
-	private double computeFD(String linkLambda, double accLambda)
+	//velocity of link lambda if its accumulation were accLambda (link accumulations of other
+	//links and total accumulation need be up-to-date, see updateDerivedQuantities())
+	private double computeFD(int linkLambda, double accLambda)
 	{
-		double vLambda, totAcc;
+		double[] weight = angleWeight[linkLambda];
+		double anisoAcc, totAcc;
 
-		totAcc = accLambda;
+		//accumulation of other links weighted by anisotropy (weight of link lambda itself is zero)
+		anisoAcc = 0.0;
+		for (int m = actMask; m != 0; m &= m - 1) {
+			int curLnk = Integer.numberOfTrailingZeros(m);
 
-		vLambda = 1.0;
-
-		//loop over all links
-		for (String curLnk : linkNames) { //current link
-			if(!curLnk.equals(linkLambda)) // If this is another link than the one the FD is computed for
-			{
-				vLambda *= Math.exp(-beta*(1.0-Math.cos(interAngle(linkLambda,curLnk)))*(linkAcc.get(curLnk)/cellArea));
-				totAcc += linkAcc.get(curLnk);
-			}
+			anisoAcc += weight[curLnk]*linkAcc[curLnk];
 		}
 
-		vLambda *= Math.exp(-theta*Math.pow(totAcc/cellArea,2.0));
+		totAcc = accLambda + (this.totAcc - linkAcc[linkLambda]);
 
-		return vLambda;
+		return Math.exp(-beta*(anisoAcc/cellArea) - theta*Math.pow(totAcc/cellArea,2.0));
 	}
 
 	// Compute the critical accumulation for a link Lambda
-	private double computeCritAcc(String linkLambda)
+	private double computeCritAcc(int linkLambda)
 	{
 		double critAcc, accOtherLinks;
 
 		if(theta!=0.0)
 		{
-			accOtherLinks = 0.0;
-
-			//loop over all links
-			for (String curLnk : linkNames) { //current link
-				if(!curLnk.equals(linkLambda)) // If this is another link than the one the FD is computed for
-				{
-					accOtherLinks += linkAcc.get(curLnk);
-				}
-			}
+			//accumulation on all other links
+			accOtherLinks = totAcc - linkAcc[linkLambda];
 
 			critAcc = -accOtherLinks/2.0 + Math.sqrt(Math.pow(accOtherLinks/2.0, 2) + Math.pow(cellArea,2.0)/(2.0*theta));
 		}
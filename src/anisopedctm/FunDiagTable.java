@@ -0,0 +1,123 @@
+package anisopedctm;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Table of a smooth function of one variable
+ *
+ * Piecewise cubic Hermite interpolation of a function on a uniform grid over [xMin, xMax],
+ * built from the exact function and its derivative (e.g., quantities of a fundamental
+ * diagram as function of a density). The grid is refined until the relative interpolation
+ * error, measured against the exact function at three points within each interval, is
+ * below the requested tolerance. If this fails with the maximal number of intervals, the
+ * table is not valid and must not be used. Outside of [xMin, xMax], value() returns NaN
+ * (callers use the exact function instead).
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class FunDiagTable {
+
+	//initial and maximal number of intervals
+	private static final int MIN_INTERVALS = 64;
+	private static final int MAX_INTERVALS = 1 << 16;
+
+	private final double xMin; //lower end of table
+	private final double xMax; //upper end of table
+
+	private double step; //interval length
+	private double[] val; //function values at grid points
+	private double[] der; //derivatives at grid points (times interval length)
+
+	private double maxError; //maximal relative interpolation error found by validation
+	private boolean valid; //true if maxError is below tolerance
+
+	// constructor
+	public FunDiagTable(DoubleUnaryOperator func, DoubleUnaryOperator deriv, double xMin, double xMax,
+			double tol) {
+		this.xMin = xMin;
+		this.xMax = xMax;
+
+		int numIntervals = MIN_INTERVALS;
+
+		while (true) {
+			build(func, deriv, numIntervals);
+
+			maxError = validate(func);
+			valid = (maxError <= tol);
+
+			if (valid || 2*numIntervals > MAX_INTERVALS) {
+				break;
+			}
+
+			numIntervals *= 2;
+		}
+	}
+
+	//tabulate function and derivative on numIntervals+1 grid points
+	private void build(DoubleUnaryOperator func, DoubleUnaryOperator deriv, int numIntervals) {
+		step = (xMax - xMin)/numIntervals;
+
+		val = new double[numIntervals + 1];
+		der = new double[numIntervals + 1];
+
+		for (int i = 0; i <= numIntervals; i++) {
+			double x = (i < numIntervals) ? xMin + i*step : xMax;
+
+			val[i] = func.applyAsDouble(x);
+			der[i] = deriv.applyAsDouble(x)*step;
+		}
+	}
+
+	//maximal relative error at a quarter, half and three quarters of each interval
+	private double validate(DoubleUnaryOperator func) {
+		double maxErr = 0.0;
+
+		for (int i = 0; i < val.length - 1; i++) {
+			for (int q = 1; q <= 3; q++) {
+				double x = xMin + (i + 0.25*q)*step;
+				double exact = func.applyAsDouble(x);
+
+				double err = Math.abs(value(x) - exact)/Math.abs(exact);
+
+				//NaN (e.g., exact value zero or not finite) invalidates the table
+				if (!(err <= maxErr)) {
+					maxErr = Double.isNaN(err) ? Double.POSITIVE_INFINITY : err;
+				}
+			}
+		}
+
+		return maxErr;
+	}
+
+	//interpolated value at x (NaN outside of table)
+	public double value(double x) {
+		if (!(x >= xMin && x <= xMax)) {
+			return Double.NaN;
+		}
+
+		double pos = (x - xMin)/step;
+		int i = Math.min((int) pos, val.length - 2);
+
+		double t = pos - i;
+		double t2 = t*t;
+		double t3 = t2*t;
+
+		return (2.0*t3 - 3.0*t2 + 1.0)*val[i] + (t3 - 2.0*t2 + t)*der[i]
+				+ (3.0*t2 - 2.0*t3)*val[i+1] + (t3 - t2)*der[i+1];
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	public double getMaxError() {
+		return maxError;
+	}
+
+	public int getNumIntervals() {
+		return val.length - 1;
+	}
+
+}
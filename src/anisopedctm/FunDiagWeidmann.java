@@ -1,9 +1,11 @@
 package anisopedctm;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 
 import org.apache.commons.math3.analysis.UnivariateFunction;
 import org.apache.commons.math3.analysis.solvers.BisectionSolver;
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
 
 /**
  * Class representing Weidmann Fundamental diagram
@@ -21,6 +23,22 @@ public class FunDiagWeidmann extends FunDiag{
 	private double gamma;
 	private double kj;
 
+	//accuracy and maximal number of function evaluations of root searches
+	private final double tolerance;
+	private final int maxEvaluations;
+
+	//table of critical density of a link as function of the density of all other links (null: exact)
+	private final FunDiagTable critDensTable;
+
+	//roots of the critical accumulation of the previous evaluation (by orientation, before
+	//truncation at jam accumulation), used as starting points of the Newton iteration
+	private final double[] warmCritAcc = new double[Orientation.NUM];
+
+	//statistics of the critical accumulation root search (since the last reset)
+	private long numSolves; //number of root searches
+	private long numIter; //number of Newton iterations
+	private long numFallbacks; //number of root searches without sign change (plain bisection)
+
 	// constructor
 	public FunDiagWeidmann(Parameter param, double areaSize) {
 		super (param, areaSize);
@@ -28,71 +46,98 @@ public class FunDiagWeidmann extends FunDiag{
 		gamma = param.getShapeParam()[0];
 		kj = param.getShapeParam()[1];
 
+		tolerance = param.numerics.tolerance;
+		maxEvaluations = param.numerics.maxEvaluations;
+
+		critDensTable = param.getFDTable();
+
+		reset();
+	}
+
+	//forget starting points of the critical accumulation root search (results do not depend on previous runs)
+	//and clear its statistics
+	@Override
+	public void reset()
+	{
+		Arrays.fill(warmCritAcc, Double.NaN);
+
+		numSolves = 0;
+		numIter = 0;
+		numFallbacks = 0;
+	}
+
+	//speed of links in a cell with infinite area (as computeFD: infinite speed in an empty cell)
+	@Override
+	public double getFreeFlowVel(double totAcc) {
+		return (totAcc == 0.0) ? Double.POSITIVE_INFINITY : 1.0;
+	}
+
+	//number of critical accumulation root searches since the last reset
+	@Override
+	public long getNumSolves() {
+		return numSolves;
+	}
+
+	//number of Newton iterations of these root searches
+	@Override
+	public long getNumIter() {
+		return numIter;
+	}
+
+	//number of these root searches falling back to bisection
+	@Override
+	public long getNumFallbacks() {
+		return numFallbacks;
 	}
 
 	//update derived quantities
 	protected void updateDerivedQuantities()
 	{
-		actLinkKeys = getActLinks();
-		numActLinks = actLinkKeys.size();
-		actLinkIndex = getActLinkIndex(); //generate indices of active Links for solving FD
-		totAcc = getTotAcc(linkAcc);
+		totAcc = getTotAcc();
 	}
 
 	//set critical accumulations and velocities for all Links
 	public void setCritLinkAccVel()
 	{
 		if (Double.isInfinite(cellArea)) {
-			for (String lnk : linkNames) {
-				//add critical accumulation and velocity to corresponding hash tables
-				critLinkAcc.put(lnk, Double.POSITIVE_INFINITY);
-				critLinkVel.put(lnk, 1.0);
-			}
+			//set critical accumulation and velocity of all links
+			Arrays.fill(critLinkAcc, Double.POSITIVE_INFINITY);
+			Arrays.fill(critLinkVel, 1.0);
 		}
 		else
 		{
 			double critAcc;
-			for (String lnk : linkNames) {
+			for (int m = linkMask; m != 0; m &= m - 1) {
+				int lnk = Integer.numberOfTrailingZeros(m);
+
 				critAcc = computeCritAcc(lnk);
-				critLinkAcc.put(lnk, critAcc);							// Critical accumulation for unidirectional flow
-				critLinkVel.put(lnk, computeFD(lnk, critAcc)); 			// Critical velocity for unidirectional flow
+				critLinkAcc[lnk] = critAcc;							// Critical accumulation for unidirectional flow
+				critLinkVel[lnk] = computeFD(lnk, critAcc); 			// Critical velocity for unidirectional flow
 			}
 		}
 	}
 
 	public void setLinkVel()
 	{
-		//clear previous record of Link velocities
-		linkVel.clear();
-
 		//update various derived quantities
 		updateDerivedQuantities();
 
-		Double velocity;
-
 		//loop over all Links
-		for (String curStr : linkNames) { //current Link
+		for (int m = linkMask; m != 0; m &= m - 1) { //current Link
+			int curLnk = Integer.numberOfTrailingZeros(m);
 
-			velocity = computeFD(curStr, linkAcc.get(curStr));
 			//store current Link speed
-			linkVel.put(curStr, velocity);
+			linkVel[curLnk] = computeFD(curLnk, linkAcc[curLnk]);
 		}
 	}
 
 	// Compute the value of Wong's FD with a Link lambda
-	private double computeFD(String linkLambda, double accLambda)
+	private double computeFD(int linkLambda, double accLambda)
 	{
 		double vLambda, totAcc;
 
-		totAcc = accLambda;
-
-		//loop over all Links
-		for (String curLnk : linkNames) { //current Link
-			if(!curLnk.equals(linkLambda)) // If this is another Link than the one the FD is computed for
-			{
-				totAcc += linkAcc.get(curLnk);
-			}
-		}
+		//accumulation of link lambda plus accumulation on all other links
+		totAcc = accLambda + (this.totAcc - linkAcc[linkLambda]);
 
 		if(totAcc == 0.0)
 		{
@@ -111,74 +156,267 @@ public class FunDiagWeidmann extends FunDiag{
 	}
 
 	// Compute the critical accumulation for a Link Lambda
-	private double computeCritAcc(String linkLambda)
+	private double computeCritAcc(int linkLambda)
 	{
 		double critAcc, accOtherLinks;
 
-		accOtherLinks = 0.0;
+		//accumulation on all other Links
+		accOtherLinks = totAcc - linkAcc[linkLambda];
 
-		//loop over all Links
-		for (String curLnk : linkNames) { //current Link
-			if(!curLnk.equals(linkLambda)) // If this is another Link than the one the FD is computed for
-			{
-				accOtherLinks += linkAcc.get(curLnk);
-			}
+		//tabulated critical density, if available and within the search interval of the root
+		critAcc = (critDensTable != null) ? critDensTable.value(accOtherLinks/cellArea)*cellArea : Double.NaN;
+
+		if (!(critAcc > 1.0 && critAcc < 100.0))
+		{
+			critAcc = solveCritAcc(linkLambda, accOtherLinks, 1.0, 100.0);
 		}
 
-		FuncRacine funcRacine = new FuncRacine(accOtherLinks, cellArea, kj, gamma);
+		if(critAcc > kj*cellArea)
+		{
+			critAcc = kj*cellArea;
+		}
 
-		final double tol = Parameter.Tolerance;
+		return critAcc;
 
-		BisectionSolver BisecSolv = new BisectionSolver(tol,tol);
+	}
 
-		int maxEval = Parameter.maxEvaluations;
+	// Safeguarded Newton iteration on [min, max] for the zero of funcRacine, started at the root of
+	// the previous evaluation of the same link. The bracket is maintained by the signs of funcRacine,
+	// a bisection step is taken whenever the Newton step leaves it. Once the step is below
+	// Numerics.tolerance, the root is polished to machine precision: the iteration goes on until
+	// |funcRacine| stops decreasing and returns the iterate with the smallest |funcRacine|. The
+	// result thus does not depend on the starting point (i.e., on the evaluation history, which
+	// depends on fastForward and the set of scheduled cells) beyond round-off of funcRacine.
+	// Without sign change on [min, max], the bisection below is used instead.
+	private double solveCritAcc(int linkLambda, double accOtherLinks, double min, double max)
+	{
+		final double tol = tolerance;
 
-		critAcc = BisecSolv.solve(maxEval, funcRacine, 1.0, 100.0);
+		final int maxEval = maxEvaluations;
 
-		if(critAcc > kj*cellArea)
-		{
-			critAcc = kj*cellArea;
+		double fMin = funcRacine(accOtherLinks, min);
+		double fMax = funcRacine(accOtherLinks, max);
+
+		numSolves++;
+
+		if (!(fMin*fMax < 0.0)) {
+			numFallbacks++;
+
+			return bisectCritAcc(accOtherLinks, min, max);
 		}
 
-		return critAcc;
+		//starting point
+		double x = warmCritAcc[linkLambda];
+		if (!(x > min && x < max)) {
+			x = (min + max)*0.5;
+		}
+
+		int numEval = 2; //number of function evaluations
+
+		double fx, next;
+
+		double best = x; //iterate with smallest |funcRacine|
+		double fBest = Double.POSITIVE_INFINITY;
+
+		boolean converged = false; //true once the step is below the tolerance
+
+		while (true) {
+			numEval += 2;
+			if (numEval > maxEval) {
+				throw new TooManyEvaluationsException(maxEval);
+			}
+
+			numIter++;
+
+			fx = funcRacine(accOtherLinks, x);
+
+			if (Math.abs(fx) < Math.abs(fBest)) {
+				best = x;
+				fBest = fx;
+			} else if (converged) {
+				//residual at round-off level
+				break;
+			}
+
+			if (fx == 0.0) {
+				break;
+			}
+
+			//shrink bracket
+			if (fx*fMin > 0) {
+				min = x;
+				fMin = fx;
+			} else {
+				max = x;
+			}
+
+			//Newton step, bisection if outside of bracket (or derivative vanishes)
+			next = x - fx/derivRacine(accOtherLinks, x);
+
+			if (!(next > min && next < max)) {
+				next = (min + max)*0.5;
+			}
+
+			if (next == x) {
+				break;
+			}
+
+			if (Math.abs(next - x) <= tol) {
+				converged = true;
+			}
 
+			x = next;
+		}
+
+		x = best;
+
+		warmCritAcc[linkLambda] = x;
+
+		return x;
 	}
 
-	// Class to find the zero (For solving the critical accumulation)
-	private static class FuncRacine implements UnivariateFunction {
+	// Bisection on [min, max] for the zero of funcRacine (same iterates and result as the
+	// BisectionSolver of commons-math with absolute accuracy Numerics.tolerance, but without
+	// allocating a solver and a function object for each link and time step)
+	private double bisectCritAcc(double accOtherLinks, double min, double max)
+	{
+		final double tol = tolerance;
 
-		private double accGammaprime;
-		private double cellArea;
-		private double kj;
-		private double gamma;
+		final int maxEval = maxEvaluations;
 
-		public FuncRacine(double accOtherLinks, double cellArea, double kj, double gamma)
-		{
-			accGammaprime = accOtherLinks;
-			this.cellArea = cellArea;
-			this.kj = kj;
-			this.gamma = gamma;
+		int numEval = 0; //number of function evaluations
+
+		double m, fm, fmin;
+
+		while (true) {
+			m = (min + max)*0.5;
+
+			numEval += 2;
+			if (numEval > maxEval) {
+				throw new TooManyEvaluationsException(maxEval);
+			}
+
+			fmin = funcRacine(accOtherLinks, min);
+			fm = funcRacine(accOtherLinks, m);
+
+			if (fm*fmin > 0) {
+				min = m;
+			} else {
+				max = m;
+			}
+
+			if (Math.abs(max - min) <= tol) {
+				return (min + max)*0.5;
+			}
 		}
+	}
+
+	// Function whose zero is the critical accumulation of a link, given the accumulation on all other links
+	private double funcRacine(double accGammaprime, double accLambda)
+	{
+		double exp, mult, totAcc;
+
+		totAcc = accGammaprime + accLambda;
+
+		mult = (1.0 + accLambda*gamma*(cellArea/Math.pow(totAcc,2)));
+
+		exp = Math.exp(-gamma*((cellArea/totAcc) - (1.0/kj)));
 
-		public double value(double accLambda)
+		if(totAcc == 0.0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		else
 		{
-			double exp, mult, totAcc;
+			return 1.0 - mult*exp;
+		}
+	}
 
-			totAcc = accGammaprime + accLambda;
+	// Derivative of funcRacine with respect to the accumulation of link lambda
+	private double derivRacine(double accGammaprime, double accLambda)
+	{
+		double totAcc, exp, mult;
 
-			mult = (1.0 + accLambda*gamma*(cellArea/Math.pow(totAcc,2)));
+		totAcc = accGammaprime + accLambda;
 
-			exp = Math.exp(-gamma*((cellArea/totAcc) - (1.0/kj)));
+		mult = 1.0 + accLambda*gamma*(cellArea/Math.pow(totAcc,2));
 
-			if(totAcc == 0.0)
-			{
-				return Double.POSITIVE_INFINITY;
+		exp = Math.exp(-gamma*((cellArea/totAcc) - (1.0/kj)));
+
+		return -exp*gamma*(cellArea/Math.pow(totAcc,2))*((accGammaprime - accLambda)/totAcc + mult);
+	}
+
+	// Tabulate the critical density of a link as function of the density of all other links
+	// (funcRacine in terms of densities, i.e., independent of the cell area) on [0, 0.9*kj].
+	// Returns null if the interpolation error exceeds tol.
+	public static FunDiagTable tabulate(Double[] shapeParam, double tol)
+	{
+		final double gamma = shapeParam[0];
+		final double kj = shapeParam[1];
+
+		FunDiagTable table = new FunDiagTable(
+				densOther -> critDensity(gamma, kj, densOther),
+				densOther -> critDensityDeriv(gamma, kj, densOther),
+				0.0, 0.9*kj, tol);
+
+		return table.isValid() ? table : null;
+	}
+
+	// Critical density of a link given the density of all other links: zero of
+	// 1 - (1 + gamma*dens/totDens^2)*exp(-gamma*(1/totDens - 1/kj)) on (0, kj - densOther),
+	// found by a bracketed Newton iteration to machine precision
+	private static double critDensity(double gamma, double kj, double densOther)
+	{
+		double min = 0.0, max = kj - densOther;
+		double dens = 0.5*max;
+
+		for (int iter = 0; iter < 200; iter++) {
+			double totDens = densOther + dens;
+			double exp = Math.exp(-gamma*(1.0/totDens - 1.0/kj));
+			double mult = 1.0 + gamma*dens/(totDens*totDens);
+
+			double f = 1.0 - mult*exp;
+
+			//function decreases on the bracket
+			if (f > 0.0) {
+				min = dens;
+			} else if (f < 0.0) {
+				max = dens;
+			} else {
+				return dens;
 			}
-			else
-			{
-				return 1.0 - mult*exp;
+
+			double deriv = -exp*gamma/(totDens*totDens)*((densOther - dens)/totDens + mult);
+			double next = dens - f/deriv;
+
+			if (!(next > min && next < max)) {
+				next = 0.5*(min + max);
 			}
+
+			if (Math.abs(next - dens) <= 1e-15*dens) {
+				return next;
+			}
+
+			dens = next;
 		}
+
+		return dens;
+	}
+
+	// Derivative of the critical density with respect to the density of all other links
+	// (implicit function theorem)
+	private static double critDensityDeriv(double gamma, double kj, double densOther)
+	{
+		double dens = critDensity(gamma, kj, densOther);
+
+		double totDens = densOther + dens;
+		double mult = 1.0 + gamma*dens/(totDens*totDens);
+
+		//partial derivatives of the function with respect to own and other density (without common factor)
+		double dOwn = (densOther - dens)/totDens + mult;
+		double dOther = mult - 2.0*dens/totDens;
+
+		return -dOther/dOwn;
 	}
 
 	// compute the critical density and critical speed (for the visualization)
@@ -188,11 +426,11 @@ public class FunDiagWeidmann extends FunDiag{
 
 		FuncRacine1D funcRacine = new FuncRacine1D(gamma,kj);
 
-		final double tol = Parameter.Tolerance;
+		final double tol = tolerance;
 
 		BisectionSolver BisecSolv = new BisectionSolver(tol, tol);
 
-		int maxEval = Parameter.maxEvaluations;
+		int maxEval = maxEvaluations;
 
 		double x_crit = BisecSolv.solve(maxEval, funcRacine, 0.0, kj);
 
@@ -1,5 +1,6 @@
 package anisopedctm;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -21,37 +22,24 @@ public class FunDiagZero extends FunDiag {
 
 	//update derived quantities
 	protected void updateDerivedQuantities() {
-		actLinkKeys = getActLinks();
-		numActLinks = actLinkKeys.size();
-		actLinkIndex = getActLinkIndex(); //generate indices of active links for solving FD
-		totAcc = getTotAcc(linkAcc);
+		totAcc = getTotAcc();
 	}
 
 	//set critical accumulations and velocities for all links
 	public void setCritLinkAccVel()
 	{
-		for (String lnk : linkNames) {
-			//add critical accumulation and velocity to corresponding hash tables
-			critLinkAcc.put(lnk, Double.POSITIVE_INFINITY);
-			critLinkVel.put(lnk, 1.0);
-		}
+		//set critical accumulation and velocity of all links
+		Arrays.fill(critLinkAcc, Double.POSITIVE_INFINITY);
+		Arrays.fill(critLinkVel, 1.0);
 	}
 
 	public void setLinkVel()
 	{
-		//clear previous record of link velocities
-		linkVel.clear();
-
 		//update various derived quantities
 		updateDerivedQuantities();
 
-		Double velocity = 1.0;
-
-		//loop over all links
-		for (String curStr : linkNames) { //current link
-			//store current link speed
-			linkVel.put(curStr, velocity);
-		}
+		//store speed of all links
+		Arrays.fill(linkVel, 1.0);
 	}
 
 
@@ -1,6 +1,6 @@
 package anisopedctm;
 
-import java.util.Enumeration;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -12,10 +12,12 @@ import java.util.Hashtable;
 
 public class Group {
 
+	private static final int INIT_NUM_TRAVEL_TIMES = 64; //initial length of travel time distribution
+
 	private final String routeName;
 	private final int depTime; //departure time interval
 	private double numPeople;
-	private Hashtable<Integer, Double> travelTimes;  // (numTINT, numPeople)
+	private double[] travelTimes;  // numPeople by travel time interval (numTINT)
 	private double meanTTSimulated; // Simulated travel time (Travel time of each group at the end of the simulation)
 	private double stdDevTTSimulated; // Simulated travel time (Travel time of each group at the end of the simulation)
 	private double relLoss; // relative loss (Number of pedestrians that reached the end over numPeople)
@@ -25,12 +27,26 @@ public class Group {
 		this.routeName = rName;
 		this.depTime = depT;
 		this.numPeople = numPeople;
-		this.travelTimes = new Hashtable<Integer, Double>();
+		this.travelTimes = new double[INIT_NUM_TRAVEL_TIMES];
 		this.relLoss = 0.0;
 	}
 
+	//travel time distribution (numTINT, numPeople), containing only observed travel times
 	public Hashtable<Integer, Double> getTravelTimes() {
-		return travelTimes;
+		Hashtable<Integer, Double> travelTimeTable = new Hashtable<Integer, Double>();
+
+		for (int travTime = 0; travTime < travelTimes.length; travTime++) {
+			if (travelTimes[travTime] > 0.0) {
+				travelTimeTable.put(travTime, travelTimes[travTime]);
+			}
+		}
+
+		return travelTimeTable;
+	}
+
+	//remove all travel times (e.g., before simulating again)
+	public void clearTravelTimes() {
+		Arrays.fill(travelTimes, 0.0);
 	}
 
 
@@ -44,13 +60,14 @@ public class Group {
 			System.err.println("ERROR: Either travel time or group fraction is invalid");
 		}
 
-		//in principle, this case should never occur as there is only one destination per group
-		else if (travelTimes.contains(travTime)) {
-			this.travelTimes.put(travTime,this.travelTimes.get(travTime) + numP);
-		}
-
 		else {
-			this.travelTimes.put(travTime, numP);
+			//enlarge distribution if necessary
+			if (travTime >= travelTimes.length) {
+				travelTimes = Arrays.copyOf(travelTimes, Math.max(2*travelTimes.length, travTime+1));
+			}
+
+			//in principle, a travel time is only recorded once as there is only one destination per group
+			travelTimes[travTime] += numP;
 		}
 
 	}
@@ -128,12 +145,13 @@ public class Group {
 		double cumTravelTime = 0.0; //cumulative weighted travel time
 		double cumTravelTimeSquared = 0.0; //cumulative weighted error of travel times
 
-	     //enumerate travel times
-	     Enumeration<Integer> travelTimeKeys = travelTimes.keys();
+	     //loop over travel times
+	     for (travelTimeInt = 0; travelTimeInt < travelTimes.length; travelTimeInt++) {
+		    	 fragSize = travelTimes[travelTimeInt];
 
-	     while (travelTimeKeys.hasMoreElements()) {
-		    	 travelTimeInt = travelTimeKeys.nextElement();
-		    	 fragSize = travelTimes.get(travelTimeInt);
+		    	 if (!(fragSize > 0.0)) {
+		    		 continue;
+		    	 }
 
 		    	 travelTime = travelTimeInt*DeltaT;
 
@@ -154,9 +172,9 @@ public class Group {
 	public double getTravTimeProb(double travTime, Parameter param) {
 		int travTimeInt = (int) Math.floor(travTime/param.getDeltaT());
 		
-		if ( travelTimes.containsKey(travTimeInt) ) {
+		if ( travTimeInt >= 0 && travTimeInt < travelTimes.length && travelTimes[travTimeInt] > 0.0 ) {
 			
-			return travelTimes.get(travTimeInt)/numPeople;
+			return travelTimes[travTimeInt]/numPeople;
 		} else {			
 			//return 0.0;
 			return Double.MIN_VALUE; //to avoid numerical troubles
@@ -0,0 +1,63 @@
+package anisopedctm;
+
+/**
+ * Index set
+ *
+ * Set of dense indices 0..n-1 (e.g., active links or cells) with constant time insertion
+ * and membership test. Members are stored in order of insertion.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class IndexSet {
+
+	private final int[] members; //members in order of insertion
+	private final boolean[] contained; //membership by index
+	private int size; //number of members
+
+	// constructor (empty set of indices 0..n-1)
+	public IndexSet(int n) {
+		members = new int[n];
+		contained = new boolean[n];
+		size = 0;
+	}
+
+	//number of members
+	public int size() {
+		return size;
+	}
+
+	//k-th member
+	public int get(int k) {
+		return members[k];
+	}
+
+	public boolean contains(int i) {
+		return contained[i];
+	}
+
+	//add index if not yet contained
+	public void add(int i) {
+		if (!contained[i]) {
+			contained[i] = true;
+			members[size++] = i;
+		}
+	}
+
+	//add all indices 0..n-1
+	public void addAll() {
+		for (int i = 0; i < members.length; i++) {
+			add(i);
+		}
+	}
+
+	//remove all members
+	public void clear() {
+		for (int k = 0; k < size; k++) {
+			contained[members[k]] = false;
+		}
+		size = 0;
+	}
+
+}
@@ -53,7 +53,7 @@ public class Input {
 	}
 
 	//load scenario configuration from file
-	public Parameter loadScenario(File scenarioFile){
+	public Parameter loadScenario(File scenarioFile, Numerics numerics){
 		
 		//lines of file
 		String[] fileLines = getFileLines(scenarioFile);
@@ -274,7 +274,7 @@ public class Input {
 
 		return new Parameter(inDir, outDir, paramFile, paramRangeFile, linkFile, cellFile, routeFile,
 				funDiagName, cflFactor, textOutput, textDebug, visualOut, showNumbers, showCellNames, correspFile,
-				demandFormat, demandFile, writeAggTable, calibMode, aggPeriodCalib);
+				demandFormat, demandFile, writeAggTable, calibMode, aggPeriodCalib, numerics);
 	}
 
 
@@ -684,7 +684,7 @@ public class Input {
 
 				//add link to global and cell-specific link list
 				linkList.put(curLinkID, curLink);
-				cellList.get(containingCell).addLocalLink(curLinkID, curLink.linkOrient);
+				cellList.get(containingCell).addLocalLink(curLinkID, curLink.orientation);
 
 				//add link to sink link list if necessary
 				if (destCell.equals("none")) {
@@ -703,7 +703,7 @@ public class Input {
 
 					//add reverse link to global and cell-specific link list
 					linkList.put(curLinkID, curLink);
-					cellList.get(containingCell).addLocalLink(curLinkID, curLink.linkOrient);
+					cellList.get(containingCell).addLocalLink(curLinkID, curLink.orientation);
 
 					//add link to sink link list if necessary
 					if (origCell.equals("none")) {
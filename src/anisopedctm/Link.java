@@ -1,8 +1,5 @@
 package anisopedctm;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
-
 /**
  * Link class
  *
@@ -19,25 +16,22 @@ public class Link {
 	private double length; //link length
 
 	public final String linkOrient; //N->E, S->W, etc (link orientation)
+	public final Orientation orientation; //link orientation (indexes fundamental diagram arrays)
 
 	private int origNodeID; //ID of origin node
 	private int destNodeID; //ID of destination node
 
 	private double relLength; //relative link length (L/L_min)
 
-	private Hashtable<Integer, Fragment> fragList; //(groupID, fragment)
-
-	private double totAcc; //current total accumulation
-	private double velNd; //prevailing speed (non-dimensional)
+	private FragmentTable fragTable; //fragments (groupID, numPeople) and their sending capacities
+	private Outbox outbox; //outflows of current time step (gathered by target links)
 
-	private double critAcc; //accumulation at which hydrodynamic flow is maximal
-	private double critVelNd; //velocity (non-dimensional) at which hydrodynamic flow is maximal
+	//numerical tolerance (fragments below are removed)
+	private double absTol;
 
-	private double candInFlow; //candidate inflow
-
-	//for visualization
-	private double totInFlow; //total inflow to link
-	private double totOutFlow; //total outflow to link
+	//compiled network holding the link state (totAcc, velNd, critAcc, critVelNd, flows)
+	private Network network;
+	private int index; //dense index of link in compiled network
 
 	// cfl parameter
 	private double cfl;
@@ -69,19 +63,64 @@ public class Link {
 					+ strOrient);
 		} else {
 			linkOrient = strOrient;
+			orientation = Orientation.fromLabel(strOrient);
 		}
 
-		this.fragList = new Hashtable<Integer,Fragment>();
-
 		this.linkOrig = Character.toString(linkOrig);
 		this.linkDest = Character.toString(linkDest);
 	}
 
+	/**
+	 * constructor: copy of a link loaded by Input (topology, length, nodes and cfl parameter),
+	 * without state
+	 */
+	public Link(Link template) {
+
+		cellName = template.cellName;
+		origCellName = template.origCellName;
+		destCellName = template.destCellName;
+
+		length = template.length;
+
+		linkOrient = template.linkOrient;
+		orientation = template.orientation;
+
+		origNodeID = template.origNodeID;
+		destNodeID = template.destNodeID;
+
+		relLength = template.relLength;
+		cfl = template.cfl;
+
+		linkOrig = template.linkOrig;
+		linkDest = template.linkDest;
+	}
+
 	public void setCFL(double cfl)
 	{
 		this.cfl = cfl;
 	}
 
+	public double getCFL() {
+		return cfl;
+	}
+
+	//bind link to its dense index in the compiled network
+	//one sending capacity slot is reserved per out link of the destination node
+	public void bind(Network net, int idx) {
+		network = net;
+		index = idx;
+
+		int destNode = net.linkDestNode[idx];
+		fragTable = new FragmentTable(net.nodeOutPtr[destNode+1] - net.nodeOutPtr[destNode]);
+		outbox = new Outbox(fragTable.getNumSlots());
+
+		absTol = net.numerics.absTol;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
 	public double getLength() {
 		return length;
 	}
@@ -114,184 +153,93 @@ public class Link {
 		relLength = length/param.getMinLinkLength();
 	}
 
-	public Double getTotAcc() {
-		return totAcc;
+	public double getTotAcc() {
+		return network.totAcc[index];
 	}
 
-	public Double getVelNd() {
-		return velNd;
+	public double getVelNd() {
+		return network.velNd[index];
 	}
 
 	public void setVelNd(double d) {
-		this.velNd = d;
+		network.velNd[index] = d;
 	}
 
-	public Double getRelTravTime() {
-		return this.relLength/this.velNd;
+	public double getRelTravTime() {
+		return network.relTravTime(index);
 	}
 
-	public Double getCritAcc() {
-		return critAcc;
+	public double getCritAcc() {
+		return network.critAcc[index];
 	}
 
 	public void setCritAcc(double d) {
-		this.critAcc = d;
+		network.critAcc[index] = d;
 	}
 
-	public Double getCritVelNd() {
-		return critVelNd;
+	public double getCritVelNd() {
+		return network.critVelNd[index];
 	}
 
 	public void setCritVelNd(double d) {
-		this.critVelNd = d;
-	}
-
-	public Double getCandInFlow() {
-		return candInFlow;
+		network.critVelNd[index] = d;
 	}
 
-	public void resetCandInFlow() {
-		this.candInFlow = 0;
-	}
-
-	public void addCandInFlow(double d) {
-		this.candInFlow += d;
+	public double getCandInFlow() {
+		return network.candInFlow[index];
 	}
 
 	public double getTotInFlow() {
-		return totInFlow;
-	}
-
-	public void addTotInFlow(double d){
-		totInFlow += d;
+		return network.totInFlow[index];
 	}
 
 	public double getTotOutFlow() {
-		return totOutFlow;
-	}
-
-	public void addTotOutFlow(double d){
-		totOutFlow += d;
+		return network.totOutFlow[index];
 	}
 
 	//total accumulation (sum of all fragments)
 	public void setTotAcc() {
-		double totAcc = 0.0; //total accumulation on link
-		double fragSize; //size of current fragment
-		int groupID; //groupID of current fragment
-
-		//iterate over all fragments and increment total accumulation
-		Enumeration<Integer> fragKeys = fragList.keys();
-
-		while(fragKeys.hasMoreElements()) {
-		    groupID = fragKeys.nextElement();
-		    fragSize = fragList.get(groupID).getNumPeople();
-
-		    totAcc += fragSize;
-		}
-
-		this.totAcc = totAcc;
-	}
-
-	//receiving capacity
-	public double recCap() {
-		return hydroInCap();
-	}
-
-	//hydrodynamic outflow capacity
-	private double hydroOutCap() {
-		if (totAcc <= critAcc) {
-			return hydroFlow();
-		} else {
-			return critCap();
-		}
-	}
-
-	//hydrodynamic inflow capacity
-	private double hydroInCap() {
-		if (totAcc <= critAcc) {
-			return critCap();
-		} else {
-			return hydroFlow();
-		}
-	}
-
-	//hydrodynamic flow
-	private double hydroFlow() {
-		return (cfl/relLength)*totAcc*velNd;
-	}
-
-	//maximal capacity (cumulative hydrodynamic flow)
-	private double critCap() {
-		return (cfl/relLength)*critAcc*critVelNd;
+		network.totAcc[index] = fragTable.totNumPeople();
 	}
 
 	//get number of people associated with groupID
 	public double getFragSize(int groupID) {
-		return fragList.get(groupID).getNumPeople();
-	}
-
-	//set number of people associated with groupID; fragment required to exist
-	private void setFragSize(int groupID, double numPeople) {
-		fragList.get(groupID).setNumPeople(numPeople);
+		return fragTable.getNumPeople(fragTable.find(groupID));
 	}
 
 	//add people to fragment; generate new fragment if necessary
 	public void addFrag(int groupID, double numPeople) {
 		if(numPeople > 0.0)
 		{
-			if (fragList.containsKey(groupID)) {
-				double newFragSize = getFragSize(groupID) + numPeople;
-				setFragSize(groupID,newFragSize);
-			} else {
-				fragList.put(groupID, new Fragment(numPeople));
-			}
+			fragTable.add(groupID, numPeople);
 		}
 	}
 
-	//remove people from fragment
-	public Boolean subFrag(int groupID, double numPeople) {
+	//remove people from fragment of entry e of fragment table
+	//returns true if the fragment has been removed
+	private boolean subFragAt(int e, double numPeople) {
+		double newFragSize = fragTable.getNumPeople(e) - numPeople;
 
-		if (!(groupID >= 0) | !(numPeople >= 0.0)) {
-			throw new IllegalArgumentException("Invalid groupID (" + Integer.toString(groupID) +
-					") or numPeople (" + Double.toString(numPeople) + ")");
+		if (newFragSize > absTol)
+		{
+			fragTable.setNumPeople(e, newFragSize);
+			return false;
 		}
-
-		Boolean fragmentRemoved = false;
-
-		if (fragList.containsKey(groupID)) {
-			double newFragSize = getFragSize(groupID) - numPeople;
-
-			if (newFragSize > Parameter.absTol)
-			{
-				setFragSize(groupID, newFragSize);
-			}
-			else if (newFragSize > - Parameter.absTol)
-			{
-				fragList.remove(groupID);
-				fragmentRemoved = true;
-			}
-			else
-			{
-				throw new IllegalArgumentException("Negative fragment size of groupID " + Integer.toString(groupID) + " on current link");
-			}
-
-		} else {
-			//if groupID does not exist, throw exception
-			throw new IllegalArgumentException("No fragment with groupID " + Integer.toString(groupID) + " on current link");
+		else if (newFragSize > - absTol)
+		{
+			fragTable.remove(e);
+			return true;
+		}
+		else
+		{
+			throw new IllegalArgumentException("Negative fragment size of groupID " +
+					Integer.toString(fragTable.getGroupID(e)) + " on current link");
 		}
-
-		return fragmentRemoved;
-	}
-
-	//remove complete fragment (useful on sink links)
-	public void removeFrag(int groupID) {
-		fragList.remove(groupID);
 	}
 
-	//get fragment list (mainly for output)
-	public Hashtable<Integer, Fragment> getFragList() {
-		return fragList;
+	//get fragment table (mainly for output)
+	public FragmentTable getFragTable() {
+		return fragTable;
 	}
 
 	//compute candidate transition flow for given sending capacity,
@@ -322,114 +270,168 @@ public class Link {
 	}
 
 
-	//propagate all fragments on current link
-	//Note: sending capacities and candidate inflows need to be up-to-date
-	public void propagate(Hashtable<Integer, Link> linkList){
+	//gather inflows of lower numbered links, then compute outflows of all fragments on current
+	//link and store them in the outbox (first phase of propagation, only modifies the current link)
+	//a fragment serves its target links one after the other and stops once it has been removed
+	//Note: sending capacities and candidate inflows need to be up-to-date, lower numbered
+	//links ending at the origin node of this link need to be propagated
+	public void propagateOut(Network net){
+
+		int destNode = net.linkDestNode[index]; //destination node of this link
+		int firstOut = net.nodeOutPtr[destNode]; //position of first out link in CSR
+
+		gatherInFlows(net, true);
+
+		outbox.clear();
 
 		//iterate through fragments on current link
-		Enumeration<Integer> enumGroups = fragList.keys();
+		int e = fragTable.first();
 
-		Boolean fragmentRemoved = false;
+		while (e >= 0) {
 
-		while (enumGroups.hasMoreElements()) {
+			int groupID = fragTable.getGroupID(e);
+			int nextE = fragTable.next(e); //next fragment (taken before current one may be removed)
+			int row = -1; //row of fragment in outbox
 
-			//get groupID and corresponding fragment
-			int groupID = enumGroups.nextElement();
-			Fragment frag = fragList.get(groupID);
+			//iterate through target links of current fragment as given by sending capacities
+			for (int k = firstOut; k < net.nodeOutPtr[destNode+1]; k++){
 
-			//iterate through targetLinks of current fragment as given by sending capacities
-			Enumeration<Integer> enumTargLinks = frag.getTargetLinks();
+				int slot = net.nodeTargetSlots[k]; //slot of target link among out links
+				double sendCapToTargLink = fragTable.getSendCap(e, slot);
 
-			while (enumTargLinks.hasMoreElements()){
+				//skip out links which are not a target of the fragment
+				if (Double.isNaN(sendCapToTargLink)) {
+					continue;
+				}
 
-				//get target link and corresponding sending capacity
-				int targLinkID = enumTargLinks.nextElement();
-				double sendCapToTargLink = frag.getSendCap(targLinkID);
+				int targLink = net.nodeOutLinks[firstOut + slot];
 
 				//get candidate inflow and receiving capacity of target link
-				double candInFlowTargLink = linkList.get(targLinkID).getCandInFlow();
-				double recCapTargLink = linkList.get(targLinkID).recCap();
+				double candInFlowTargLink = net.candInFlow[targLink];
+				double recCapTargLink = net.recCap(targLink);
 
 				//compute actual flow (equal to candidate transition flow due to absence of cell capacity constraints)
 				double actualFlow = candTransFlow(sendCapToTargLink, candInFlowTargLink, recCapTargLink);
 
 				//subtract actual flow from current fragment and increment total outflow of current link
-				fragmentRemoved = this.subFrag(groupID, actualFlow);
-				this.addTotOutFlow(actualFlow);
+				boolean fragmentRemoved = subFragAt(e, actualFlow);
+				net.totOutFlow[index] += actualFlow;
 
-				//add actual flow to target link and add to total inflow
-				linkList.get(targLinkID).addFrag(groupID, actualFlow);
-				linkList.get(targLinkID).addTotInFlow(actualFlow);
+				//store actual flow in outbox (added to target link when it gathers its inflows)
+				if (row < 0) {
+					row = outbox.add(groupID);
+				}
+				outbox.setFlow(row, slot, actualFlow);
 
 				// If the fragment has been removed, we stop the loop
-				if(fragmentRemoved == true)
-				{
+				if (fragmentRemoved) {
 					break;
 				}
 			}
-		}
 
+			e = nextE;
+		}
+	}
 
+	//gather inflows of higher numbered links (second phase of propagation, only modifies the current link)
+	//Note: all links need to be propagated by propagateOut
+	public void propagateIn(Network net){
+		gatherInFlows(net, false);
 	}
 
-	//reset total flows, candidate inflow and sending capacities
-	public void resetFlows(){
-		//reset total in and out flows
-		totInFlow = 0.0;
-		totOutFlow = 0.0;
+	//gather inflows from the outboxes of the lower (or higher) numbered links ending at the
+	//origin node of current link, in increasing link order
+	private void gatherInFlows(Network net, boolean lower){
 
-		//reset candidate inflow
-		candInFlow = 0.0;
+		int origNode = net.linkOrigNode[index]; //origin node of this link
+		int slot = net.linkOutSlot[index]; //slot of this link among out links of origin node
 
-		//iterate through fragments on current link
-		for (Fragment frag : fragList.values() ) {
-			//reset sending capacities
-			frag.resetSendCap();
+		//iterate through in links of origin node
+		for (int k = net.nodeInPtr[origNode]; k < net.nodeInPtr[origNode+1]; k++) {
+			if ((net.nodeInLinks[k] < index) != lower) {
+				continue;
+			}
+
+			Outbox inbound = net.links[net.nodeInLinks[k]].outbox;
+
+			for (int row = 0; row < inbound.size(); row++) {
+				double flow = inbound.getFlow(row, slot);
+
+				//skip fragments not sent to this link
+				if (Double.isNaN(flow)) {
+					continue;
+				}
+
+				//add actual flow to this link and add to total inflow
+				addFrag(inbound.getGroupID(row), flow);
+				net.totInFlow[index] += flow;
+			}
 		}
 	}
 
-	//get route choice fraction from destination node of this link
-	private double getRouteSplitFrac(String routeName, int targLinkID,
-			Hashtable<Integer, Link> linkList, Hashtable<Integer, Node> nodeList, Parameter param) {
-		Node node = nodeList.get(destNodeID);
+	//gather candidate inflow from the sending capacities of all links ending at the origin node of current link
+	//Note: sending capacities of in links need to be up-to-date
+	public void setCandInFlow(Network net) {
 
-		//if target link is a valid target for current route
-		if (node.containsOutLink(linkList, nodeList, routeName, targLinkID))
-		{
-			//return corresponding split fraction
-			return node.getRouteChoiceFrac(linkList, nodeList, routeName, targLinkID, param);
-		} else
-		{
-			//otherwise return NaN
-			return Double.NaN;
+		int origNode = net.linkOrigNode[index]; //origin node of this link
+		int slot = net.linkOutSlot[index]; //slot of this link among out links of origin node
+
+		double candInFlow = 0.0;
+
+		//iterate through in links of origin node and their fragments
+		for (int k = net.nodeInPtr[origNode]; k < net.nodeInPtr[origNode+1]; k++) {
+			FragmentTable inbound = net.links[net.nodeInLinks[k]].fragTable;
+
+			for (int e = inbound.first(); e >= 0; e = inbound.next(e)) {
+				double curSendCap = inbound.getSendCap(e, slot);
+
+				if (!Double.isNaN(curSendCap)) {
+					candInFlow += curSendCap;
+				}
+			}
 		}
+
+		net.candInFlow[index] = candInFlow;
 	}
 
-	//set sending capacities for fragment corresponding to groupID
-	private void setSendCapFrag(int groupID, Hashtable<Integer, Link> linkList, Hashtable<Integer, Node> nodeList,
-		Hashtable<Integer, Group> groupList, Parameter param){
+	//reset total flows, candidate inflow, sending capacities and outbox
+	public void resetFlows(){
+		//reset total in and out flows, and candidate inflow
+		network.resetFlows(index);
 
-		//get fragment corresponding to groupID
-		Fragment frag = fragList.get(groupID);
+		//reset sending capacities of all fragments
+		fragTable.resetSendCap();
 
-		//route corresponding to group
-		String routeName = groupList.get(groupID).getRouteName();
+		//remove outflows of previous time step
+		outbox.clear();
+	}
+
+	//set sending capacities for fragment of entry e of fragment table (only modifies the current link)
+	private void setSendCapFrag(int e, Network net, int[] groupRoute){
+
+		//route corresponding to group (dense route index)
+		int route = groupRoute[fragTable.getGroupID(e)];
 
 		//number of people in fragment
-		double fragSize = frag.getNumPeople();
+		double fragSize = fragTable.getNumPeople(e);
 
 		//minimum of fragment size and hydrodynamic outflow capacity (with demand-proportional supply)
-		double fragFlow = Math.min(fragSize, fragSize/totAcc*hydroOutCap());
+		double fragFlow = Math.min(fragSize, fragSize/net.totAcc[index]*net.hydroOutCap(index));
 
 		double routeSplitFrac; //container for route choice fraction
 		double curSendCap; //container for current sending capacity
 
+		int destNode = net.linkDestNode[index]; //destination node of this link
+		int firstOut = net.nodeOutPtr[destNode]; //position of first out link in CSR
+
+		//pre-computed split fractions of route at destination node (row of split table)
+		double[] split = net.splitFrac[net.routeField[route]];
 
-		//iterate over all out links
-		for (int targLinkID : nodeList.get(destNodeID).getOutLinks()){
-			//route choice fraction corresponding to route and target link (obtained from node)
-			//if targLinkID infeasible on current route, NaN is returned
-			routeSplitFrac = getRouteSplitFrac(routeName, targLinkID, linkList, nodeList, param);
+		//iterate over all out links (slot: position among out links of destination node)
+		for (int slot = 0; slot < fragTable.getNumSlots(); slot++){
+			//route choice fraction corresponding to route and target link
+			//if target link infeasible on current route, NaN is stored
+			routeSplitFrac = split[firstOut + slot];
 
 			//if out link is part of current route
 			if (Double.isNaN(routeSplitFrac) == false)
@@ -437,36 +439,22 @@ public class Link {
 				//compute sending capacity
 				curSendCap = routeSplitFrac*fragFlow;
 
-				//set sending capacity
-				frag.setSendCap(targLinkID, curSendCap);
-
-				//increment candidate inflow of target link
-				linkList.get(targLinkID).addCandInFlow(curSendCap);
+				//set sending capacity (candidate inflow of target link is gathered by target link)
+				fragTable.setSendCap(e, slot, curSendCap);
 			}
 		}
 	}
 
 	//set sending capacities for all fragments
-	public void setSendCap(Hashtable<Integer, Link> linkList, Hashtable<Integer, Node> nodeList,
-		Hashtable<Integer, Group> groupList, Parameter param){
-		int groupID; //groupID of current fragment
-
+	//groupRoute: dense route index by groupID
+	public void setSendCap(Network net, int[] groupRoute){
 		//iterate over fragments
-		Enumeration<Integer> fragKeys = fragList.keys();
-		while(fragKeys.hasMoreElements()) {
-		    groupID = fragKeys.nextElement();
-
+		for (int e = fragTable.first(); e >= 0; e = fragTable.next(e)) {
 		    //set sending capacities corresponding to current fragment
-		    setSendCapFrag(groupID, linkList, nodeList, groupList, param);
+		    setSendCapFrag(e, net, groupRoute);
 		}
 	}
 
-	//get IDs of groups currently on link
-	public Enumeration<Integer> getActiveGroups() {
-		return fragList.keys();
-	}
-
-
 	///////////////////////////////////////////////////////////////////////////////////////
 
 	// Only for the visualization
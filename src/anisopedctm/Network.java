@@ -0,0 +1,296 @@
+package anisopedctm;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+/**
+ * Compiled network
+ *
+ * Dense representation of cells, links, nodes and routes used by the time step loop.
+ * Cells, links, nodes and routes are assigned consecutive indices, adjacency is stored
+ * in compressed sparse row (CSR) form and the dynamic link state is kept in primitive
+ * columns indexed by the dense link index.
+ *
+ * Links are propagated in the order of their dense index (the order of the link table): a
+ * link receives the inflows of lower numbered links before it sends its own outflows, and the
+ * inflows of higher numbered links afterwards (see Link.propagateOut and propagateIn). Links
+ * of the same propagation level do not depend on each other and can be propagated in parallel;
+ * a link only depends on links of lower levels.
+ *
+ * The topology is taken from a network model, which may be shared with other simulations
+ * (its arrays are referenced, not copied); the network holds the simulation state: its
+ * own cells and links, link state columns and route-specific node state.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class Network {
+
+	//shared topology
+	public final NetworkModel model;
+
+	//numerical configuration of the simulation
+	public final Numerics numerics;
+
+	//number of cells, links, nodes and routes
+	public final int numCells;
+	public final int numLinks;
+	public final int numNodes;
+	public final int numRoutes;
+	public final int numFields; //number of distinct potential fields
+
+	//objects by dense index (cells and links belong to this network, nodes and routes to the model)
+	final Cell[] cells;
+	final Link[] links;
+	final Node[] nodes;
+	final Route[] routes;
+
+	//link topology (by dense link index)
+	final int[] linkCell; //containing cell
+	final int[] linkOrigNode; //origin node
+	final int[] linkDestNode; //destination node
+	final double[] relLength; //relative link length (L/L_min)
+	final double[] cfl; //cfl parameter
+	final boolean[] sinkLink; //true if link ends at a destination
+	final int[] linkOutSlot; //position of link among out links of its origin node
+	final int[] linkLevel; //propagation level
+	public final int numLevels; //number of propagation levels
+
+	//CSR adjacency: node -> out links, node -> in links, cell -> local links
+	final int[] nodeOutPtr;
+	final int[] nodeOutLinks;
+	final int[] nodeInPtr;
+	final int[] nodeInLinks;
+	final int[] nodeTargetSlots; //node -> slots of out links in the order in which fragments serve them
+	final int[] cellLinkPtr;
+	final int[] cellLinks;
+
+	//route topology (by dense route index)
+	final int[] routeSourceLink;
+	final int[] routeSinkLink;
+	final int[] routeDestNode;
+	final int[] routeNodePtr; //CSR: route -> nodes on route (increasing dense index)
+	final int[] routeNodes;
+
+	//potential fields: routes with identical destination node and node set share a field
+	final int[] routeField; //field of route
+	final int[] fieldRoute; //representative route of field (first route with that field)
+
+	//nodes at which people enter or leave the network
+	final int[] sourceSinkNodes;
+	final boolean[] sourceSinkNode; //true if node is a source/sink node (by dense node index)
+
+	//link state (by dense link index)
+	final double[] totAcc; //current total accumulation
+	final double[] velNd; //prevailing speed (non-dimensional)
+	final double[] critAcc; //accumulation at which hydrodynamic flow is maximal
+	final double[] critVelNd; //velocity (non-dimensional) at which hydrodynamic flow is maximal
+	final double[] candInFlow; //candidate inflow
+	final double[] totInFlow; //total inflow to link
+	final double[] totOutFlow; //total outflow of link
+
+	//route-specific node state (by dense route and node index)
+	//NaN if the node is neither on the route nor a source/sink node
+	//routes sharing a potential field share the same row
+	final double[][] potential; //node potential
+	final double[][] rChoiceDenom; //denominator of route choice model
+
+	//true if potentials of field changed in the current time step (by field index)
+	final boolean[] fieldUpdated;
+
+	//route choice at the destination node of a link, by field and position k of the target link
+	//among the out links of the node in CSR (nodeOutLinks[k]); the out links of a node are contiguous
+	final boolean[][] splitFeasible; //true if target link is feasible for the field (from model)
+	final double[][] splitFrac; //split fraction (NaN if infeasible)
+
+	// constructor: simulation state of model, working on the given cells and links
+	//(generated by NetworkModel.newCells and newLinks)
+	public Network(NetworkModel model, Hashtable<String, Cell> cellList, Hashtable<Integer, Link> linkList,
+			Numerics numerics) {
+
+		this.model = model;
+		this.numerics = numerics;
+
+		numCells = model.numCells;
+		numLinks = model.numLinks;
+		numNodes = model.numNodes;
+		numRoutes = model.numRoutes;
+		numFields = model.numFields;
+
+		cells = new Cell[numCells];
+		for (int c = 0; c < numCells; c++) {
+			cells[c] = cellList.get(model.cellNames[c]);
+		}
+
+		links = new Link[numLinks];
+		for (int l = 0; l < numLinks; l++) {
+			links[l] = linkList.get(model.linkIDs[l]);
+		}
+
+		nodes = model.nodes;
+		routes = model.routes;
+
+		linkCell = model.linkCell;
+		linkOrigNode = model.linkOrigNode;
+		linkDestNode = model.linkDestNode;
+		relLength = model.relLength;
+		cfl = model.cfl;
+		sinkLink = model.sinkLink;
+		linkOutSlot = model.linkOutSlot;
+		linkLevel = model.linkLevel;
+		numLevels = model.numLevels;
+
+		nodeOutPtr = model.nodeOutPtr;
+		nodeOutLinks = model.nodeOutLinks;
+		nodeInPtr = model.nodeInPtr;
+		nodeInLinks = model.nodeInLinks;
+		nodeTargetSlots = model.nodeTargetSlots;
+		cellLinkPtr = model.cellLinkPtr;
+		cellLinks = model.cellLinks;
+
+		routeSourceLink = model.routeSourceLink;
+		routeSinkLink = model.routeSinkLink;
+		routeDestNode = model.routeDestNode;
+		routeNodePtr = model.routeNodePtr;
+		routeNodes = model.routeNodes;
+
+		routeField = model.routeField;
+		fieldRoute = model.fieldRoute;
+
+		sourceSinkNodes = model.sourceSinkNodes;
+		sourceSinkNode = model.sourceSinkNode;
+
+		splitFeasible = model.splitFeasible;
+
+		/*
+		 * link state
+		 */
+
+		totAcc = new double[numLinks];
+		velNd = new double[numLinks];
+		critAcc = new double[numLinks];
+		critVelNd = new double[numLinks];
+		candInFlow = new double[numLinks];
+		totInFlow = new double[numLinks];
+		totOutFlow = new double[numLinks];
+
+		/*
+		 * route-specific node state
+		 */
+
+		fieldUpdated = new boolean[numFields];
+
+		potential = new double[numRoutes][];
+		rChoiceDenom = new double[numRoutes][];
+
+		for (int r = 0; r < numRoutes; r++) {
+			//share row of representative route
+			if (fieldRoute[routeField[r]] != r) {
+				potential[r] = potential[fieldRoute[routeField[r]]];
+				rChoiceDenom[r] = rChoiceDenom[fieldRoute[routeField[r]]];
+				continue;
+			}
+
+			potential[r] = new double[numNodes];
+			rChoiceDenom[r] = new double[numNodes];
+
+			Arrays.fill(potential[r], Double.NaN);
+			Arrays.fill(rChoiceDenom[r], Double.NaN);
+
+			//potentials are defined on route nodes and on all source/sink nodes
+			for (int k = routeNodePtr[r]; k < routeNodePtr[r+1]; k++) {
+				potential[r][routeNodes[k]] = Double.MAX_VALUE;
+			}
+			for (int n : sourceSinkNodes) {
+				potential[r][n] = Double.MAX_VALUE;
+			}
+		}
+
+		splitFrac = new double[numFields][numLinks];
+
+		for (int f = 0; f < numFields; f++) {
+			Arrays.fill(splitFrac[f], Double.NaN);
+		}
+
+		//bind links and cells to their dense index
+		for (int l = 0; l < numLinks; l++) {
+			links[l].bind(this, l);
+		}
+		for (int c = 0; c < numCells; c++) {
+			cells[c].bind(this, c);
+		}
+	}
+
+	//dense index of a cell
+	public int getCellIndex(String cellName) {
+		return model.getCellIndex(cellName);
+	}
+
+	//dense index of a link
+	public int getLinkIndex(int linkID) {
+		return model.getLinkIndex(linkID);
+	}
+
+	//dense index of a node
+	public int getNodeIndex(int nodeID) {
+		return model.getNodeIndex(nodeID);
+	}
+
+	//dense index of a route
+	public int getRouteIndex(String routeName) {
+		return model.getRouteIndex(routeName);
+	}
+
+	//receiving capacity
+	public double recCap(int l) {
+		return hydroInCap(l);
+	}
+
+	//hydrodynamic outflow capacity
+	public double hydroOutCap(int l) {
+		if (totAcc[l] <= critAcc[l]) {
+			return hydroFlow(l);
+		} else {
+			return critCap(l);
+		}
+	}
+
+	//hydrodynamic inflow capacity
+	private double hydroInCap(int l) {
+		if (totAcc[l] <= critAcc[l]) {
+			return critCap(l);
+		} else {
+			return hydroFlow(l);
+		}
+	}
+
+	//hydrodynamic flow
+	private double hydroFlow(int l) {
+		return (cfl[l]/relLength[l])*totAcc[l]*velNd[l];
+	}
+
+	//maximal capacity (cumulative hydrodynamic flow)
+	private double critCap(int l) {
+		return (cfl[l]/relLength[l])*critAcc[l]*critVelNd[l];
+	}
+
+	//relative travel time on link
+	public double relTravTime(int l) {
+		return relLength[l]/velNd[l];
+	}
+
+	//true if potential of node is defined for route
+	//(i.e., the node is a feasible destination of a link on the route)
+	public boolean hasPotential(int route, int n) {
+		return !Double.isNaN(potential[route][n]);
+	}
+
+	//reset total flows and candidate inflow
+	public void resetFlows(int l) {
+		totInFlow[l] = 0.0;
+		totOutFlow[l] = 0.0;
+		candInFlow[l] = 0.0;
+	}
+
+}
@@ -0,0 +1,411 @@
+package anisopedctm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+/**
+ * Network model
+ *
+ * Topology of a network (cells, links, nodes, routes) as loaded from the cell, link and
+ * route files, together with its dense compiled form (indices, CSR adjacency, route
+ * topology, potential fields). The model is not modified after construction and can be
+ * shared by any number of simulations, also concurrently. The cells and links of the model
+ * only serve as templates: each simulation state (Network) works on its own copies, while
+ * nodes, routes and all compiled arrays are shared.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class NetworkModel {
+
+	//files and parameters the model has been loaded with
+	public final String key;
+	public final double minLinkLength; //length of shortest link
+
+	//tables generated by Input (cells and links are templates)
+	private final Hashtable<String, Cell> cellList;
+	private final Hashtable<Integer, Link> linkList;
+	final Hashtable<Integer, Node> nodeList;
+	final Hashtable<String, Route> routeList;
+
+	//number of cells, links, nodes and routes
+	public final int numCells;
+	public final int numLinks;
+	public final int numNodes;
+	public final int numRoutes;
+	public final int numFields; //number of distinct potential fields
+
+	//templates and shared objects by dense index
+	private final Cell[] cells;
+	private final Link[] links;
+	final Node[] nodes;
+	final Route[] routes;
+
+	//original keys by dense index
+	final String[] cellNames;
+	final int[] linkIDs;
+	final int[] nodeIDs;
+	final String[] routeNames;
+
+	//original keys to dense index
+	private final Hashtable<String, Integer> cellIndex;
+	private final Hashtable<Integer, Integer> linkIndex;
+	private final Hashtable<Integer, Integer> nodeIndex;
+	private final Hashtable<String, Integer> routeIndex;
+
+	//link topology (by dense link index)
+	final int[] linkCell; //containing cell
+	final int[] linkOrigNode; //origin node
+	final int[] linkDestNode; //destination node
+	final double[] relLength; //relative link length (L/L_min)
+	final double[] cfl; //cfl parameter
+	final boolean[] sinkLink; //true if link ends at a destination
+	final int[] linkOutSlot; //position of link among out links of its origin node
+	final int[] linkLevel; //propagation level (see Network)
+	public final int numLevels; //number of propagation levels
+
+	//CSR adjacency: node -> out links, node -> in links, cell -> local links
+	final int[] nodeOutPtr;
+	final int[] nodeOutLinks;
+	final int[] nodeInPtr;
+	final int[] nodeInLinks;
+	final int[] nodeTargetSlots; //node -> slots of out links in the order in which fragments serve them
+	final int[] cellLinkPtr;
+	final int[] cellLinks;
+
+	//route topology (by dense route index)
+	final int[] routeSourceLink;
+	final int[] routeSinkLink;
+	final int[] routeDestNode;
+	final int[] routeNodePtr; //CSR: route -> nodes on route (increasing dense index)
+	final int[] routeNodes;
+
+	//potential fields: routes with identical destination node and node set share a field
+	final int[] routeField; //field of route
+	final int[] fieldRoute; //representative route of field (first route with that field)
+
+	//nodes at which people enter or leave the network
+	final int[] sourceSinkNodes;
+	final boolean[] sourceSinkNode; //true if node is a source/sink node (by dense node index)
+
+	//route choice at the destination node of a link, by field and position k of the target link
+	//among the out links of the node in CSR (nodeOutLinks[k]): true if the destination node of
+	//the target link carries a potential of the field (node on route or source/sink node)
+	final boolean[][] splitFeasible;
+
+	// constructor: load cells, links, nodes and routes of the scenario and compile them
+	//NOTE: sets the minimal link length (and thus the length of the time step) of param
+	public NetworkModel(Input input, Parameter param) {
+
+		key = key(param);
+
+		HashSet<String> zoneList = new HashSet<String>(); //for consistency check
+		HashSet<Integer> sinkLinks = new HashSet<Integer>(); //links ending at destinations
+
+		cellList = input.loadCells(zoneList, param);
+
+		linkList = input.loadLinks(cellList, sinkLinks, param);
+
+		nodeList = input.buildNodes(cellList, linkList);
+
+		routeList = input.loadRoutes(cellList, zoneList, linkList, nodeList, param);
+
+		HashSet<Integer> sourceSinkNodeIDs = input.setSourceSinkNodes(linkList, sinkLinks, param);
+
+		minLinkLength = param.getMinLinkLength();
+
+		numCells = cellList.size();
+		numLinks = linkList.size();
+		numNodes = nodeList.size();
+		numRoutes = routeList.size();
+
+		/*
+		 * dense indices: cells, nodes and routes in sorted key order, links in the order of the
+		 * link table, in which they have always been processed (propagation depends on the order
+		 * of the links, see Network)
+		 */
+
+		ArrayList<String> sortedCells = new ArrayList<String>(cellList.keySet());
+		Collections.sort(sortedCells);
+		ArrayList<Integer> tableLinks = new ArrayList<Integer>(linkList.keySet());
+		ArrayList<Integer> sortedNodes = new ArrayList<Integer>(nodeList.keySet());
+		Collections.sort(sortedNodes);
+		ArrayList<String> sortedRoutes = new ArrayList<String>(routeList.keySet());
+		Collections.sort(sortedRoutes);
+
+		cells = new Cell[numCells];
+		cellNames = new String[numCells];
+		cellIndex = new Hashtable<String, Integer>();
+		for (int c = 0; c < numCells; c++) {
+			cellNames[c] = sortedCells.get(c);
+			cells[c] = cellList.get(cellNames[c]);
+			cellIndex.put(cellNames[c], c);
+		}
+
+		links = new Link[numLinks];
+		linkIDs = new int[numLinks];
+		linkIndex = new Hashtable<Integer, Integer>();
+		for (int l = 0; l < numLinks; l++) {
+			linkIDs[l] = tableLinks.get(l);
+			links[l] = linkList.get(linkIDs[l]);
+			linkIndex.put(linkIDs[l], l);
+		}
+
+		nodes = new Node[numNodes];
+		nodeIDs = new int[numNodes];
+		nodeIndex = new Hashtable<Integer, Integer>();
+		for (int n = 0; n < numNodes; n++) {
+			nodeIDs[n] = sortedNodes.get(n);
+			nodes[n] = nodeList.get(nodeIDs[n]);
+			nodeIndex.put(nodeIDs[n], n);
+		}
+
+		routes = new Route[numRoutes];
+		routeNames = new String[numRoutes];
+		routeIndex = new Hashtable<String, Integer>();
+		for (int r = 0; r < numRoutes; r++) {
+			routeNames[r] = sortedRoutes.get(r);
+			routes[r] = routeList.get(routeNames[r]);
+			routeIndex.put(routeNames[r], r);
+		}
+
+		/*
+		 * link topology
+		 */
+
+		linkCell = new int[numLinks];
+		linkOrigNode = new int[numLinks];
+		linkDestNode = new int[numLinks];
+		relLength = new double[numLinks];
+		cfl = new double[numLinks];
+		sinkLink = new boolean[numLinks];
+
+		for (int l = 0; l < numLinks; l++) {
+			linkCell[l] = cellIndex.get(links[l].cellName);
+			linkOrigNode[l] = nodeIndex.get(links[l].getOrigNode());
+			linkDestNode[l] = nodeIndex.get(links[l].getDestNode());
+			relLength[l] = links[l].getRelLength();
+			cfl[l] = links[l].getCFL();
+			sinkLink[l] = sinkLinks.contains(linkIDs[l]);
+		}
+
+		/*
+		 * CSR adjacency
+		 */
+
+		nodeOutPtr = new int[numNodes+1];
+		nodeInPtr = new int[numNodes+1];
+		cellLinkPtr = new int[numCells+1];
+
+		//count degrees
+		for (int l = 0; l < numLinks; l++) {
+			nodeOutPtr[linkOrigNode[l]+1]++;
+			nodeInPtr[linkDestNode[l]+1]++;
+		}
+		for (int c = 0; c < numCells; c++) {
+			cellLinkPtr[c+1] = cellLinkPtr[c] + cells[c].getLocalLinkIDs().size();
+		}
+		for (int n = 0; n < numNodes; n++) {
+			nodeOutPtr[n+1] += nodeOutPtr[n];
+			nodeInPtr[n+1] += nodeInPtr[n];
+		}
+
+		//fill adjacency: out links in the order of the node (route choice denominators are summed
+		//in this order), in links in increasing link order
+		nodeOutLinks = new int[numLinks];
+		nodeInLinks = new int[numLinks];
+		int[] inFill = new int[numNodes];
+		for (int n = 0; n < numNodes; n++) {
+			int k = nodeOutPtr[n];
+			for (int linkID : nodes[n].getOutLinks()) {
+				nodeOutLinks[k++] = linkIndex.get(linkID);
+			}
+		}
+		for (int l = 0; l < numLinks; l++) {
+			nodeInLinks[nodeInPtr[linkDestNode[l]] + inFill[linkDestNode[l]]++] = l;
+		}
+
+		linkOutSlot = new int[numLinks];
+		for (int n = 0; n < numNodes; n++) {
+			for (int k = nodeOutPtr[n]; k < nodeOutPtr[n+1]; k++) {
+				linkOutSlot[nodeOutLinks[k]] = k - nodeOutPtr[n];
+			}
+		}
+
+		//propagation levels: a link gathers the inflows of lower numbered in links before its own
+		//outflows are sent, hence it is propagated after them (in links of its origin node)
+		linkLevel = new int[numLinks];
+		int maxLevel = 0;
+		for (int l = 0; l < numLinks; l++) {
+			int origNode = linkOrigNode[l];
+
+			for (int k = nodeInPtr[origNode]; k < nodeInPtr[origNode+1] && nodeInLinks[k] < l; k++) {
+				linkLevel[l] = Math.max(linkLevel[l], linkLevel[nodeInLinks[k]] + 1);
+			}
+			maxLevel = Math.max(maxLevel, linkLevel[l]);
+		}
+		numLevels = maxLevel + 1;
+
+		//order in which a fragment serves its target links: enumeration order of its table of
+		//sending capacities (filled in out link order), as fragments have always been propagated
+		nodeTargetSlots = new int[numLinks];
+		for (int n = 0; n < numNodes; n++) {
+			Hashtable<Integer, Integer> targetSlots = new Hashtable<Integer, Integer>();
+			for (int k = nodeOutPtr[n]; k < nodeOutPtr[n+1]; k++) {
+				targetSlots.put(linkIDs[nodeOutLinks[k]], k - nodeOutPtr[n]);
+			}
+
+			int k = nodeOutPtr[n];
+			for (int slot : targetSlots.values()) {
+				nodeTargetSlots[k++] = slot;
+			}
+		}
+
+		//local links keep the order in which they were added to the cell
+		cellLinks = new int[cellLinkPtr[numCells]];
+		for (int c = 0; c < numCells; c++) {
+			int k = cellLinkPtr[c];
+			for (int linkID : cells[c].getLocalLinkIDs()) {
+				cellLinks[k++] = linkIndex.get(linkID);
+			}
+		}
+
+		/*
+		 * route topology
+		 */
+
+		routeSourceLink = new int[numRoutes];
+		routeSinkLink = new int[numRoutes];
+		routeDestNode = new int[numRoutes];
+
+		for (int r = 0; r < numRoutes; r++) {
+			routeSourceLink[r] = linkIndex.get(routes[r].getSourceLinkID());
+			routeSinkLink[r] = linkIndex.get(routes[r].getSinkLinkID());
+			routeDestNode[r] = nodeIndex.get(routes[r].getDestNodeID());
+		}
+
+		routeNodePtr = new int[numRoutes+1];
+		for (int r = 0; r < numRoutes; r++) {
+			routeNodePtr[r+1] = routeNodePtr[r] + routes[r].getRouteNodes().size();
+		}
+
+		routeNodes = new int[routeNodePtr[numRoutes]];
+		for (int r = 0; r < numRoutes; r++) {
+			int k = routeNodePtr[r];
+			for (int nodeID : routes[r].getRouteNodes()) {
+				routeNodes[k++] = nodeIndex.get(nodeID);
+			}
+			Arrays.sort(routeNodes, routeNodePtr[r], routeNodePtr[r+1]);
+		}
+
+		ArrayList<Integer> sortedSourceSink = new ArrayList<Integer>(sourceSinkNodeIDs);
+		Collections.sort(sortedSourceSink);
+		sourceSinkNodes = new int[sortedSourceSink.size()];
+		for (int i = 0; i < sourceSinkNodes.length; i++) {
+			sourceSinkNodes[i] = nodeIndex.get(sortedSourceSink.get(i));
+		}
+
+		sourceSinkNode = new boolean[numNodes];
+		for (int n : sourceSinkNodes) {
+			sourceSinkNode[n] = true;
+		}
+
+		//distinct potential fields (key: destination node and sorted route nodes)
+		Hashtable<String, Integer> fieldIndex = new Hashtable<String, Integer>();
+		routeField = new int[numRoutes];
+		int[] firstRoute = new int[numRoutes];
+
+		for (int r = 0; r < numRoutes; r++) {
+			String key = routeDestNode[r] + ":" + Arrays.toString(
+					Arrays.copyOfRange(routeNodes, routeNodePtr[r], routeNodePtr[r+1]));
+
+			Integer f = fieldIndex.get(key);
+			if (f == null) {
+				f = fieldIndex.size();
+				fieldIndex.put(key, f);
+				firstRoute[f] = r;
+			}
+			routeField[r] = f;
+		}
+
+		numFields = fieldIndex.size();
+		fieldRoute = Arrays.copyOf(firstRoute, numFields);
+
+		//feasible target links
+		splitFeasible = new boolean[numFields][numLinks];
+
+		for (int f = 0; f < numFields; f++) {
+			int r = fieldRoute[f];
+
+			for (int k = 0; k < numLinks; k++) {
+				int n = linkDestNode[nodeOutLinks[k]];
+
+				splitFeasible[f][k] = sourceSinkNode[n] ||
+						Arrays.binarySearch(routeNodes, routeNodePtr[r], routeNodePtr[r+1], n) >= 0;
+			}
+		}
+	}
+
+	//key identifying the network of a scenario: cell, link and route files (absolute path,
+	//modification time and size, such that modified files are loaded anew) and cfl parameter
+	public static String key(Parameter param) {
+		StringBuilder key = new StringBuilder();
+
+		for (String path : new String[] {param.cellFilePath, param.linkFilePath, param.routeFilePath}) {
+			File file = new File(path).getAbsoluteFile();
+
+			key.append(file.toPath().normalize()).append('@').append(file.lastModified()).append(',')
+				.append(file.length()).append('|');
+		}
+
+		return key.append(param.getCFL()).toString();
+	}
+
+	//new cells for a simulation of the model (fundamental diagrams according to param)
+	public Hashtable<String, Cell> newCells(Parameter param) {
+		Hashtable<String, Cell> newCellList = new Hashtable<String, Cell>();
+
+		for (int c = 0; c < numCells; c++) {
+			newCellList.put(cellNames[c], new Cell(cells[c], param));
+		}
+
+		return newCellList;
+	}
+
+	//new links for a simulation of the model
+	public Hashtable<Integer, Link> newLinks() {
+		Hashtable<Integer, Link> newLinkList = new Hashtable<Integer, Link>();
+
+		for (int l = 0; l < numLinks; l++) {
+			newLinkList.put(linkIDs[l], new Link(links[l]));
+		}
+
+		return newLinkList;
+	}
+
+	//dense index of a cell
+	public int getCellIndex(String cellName) {
+		return cellIndex.get(cellName);
+	}
+
+	//dense index of a link
+	public int getLinkIndex(int linkID) {
+		return linkIndex.get(linkID);
+	}
+
+	//dense index of a node
+	public int getNodeIndex(int nodeID) {
+		return nodeIndex.get(nodeID);
+	}
+
+	//dense index of a route
+	public int getRouteIndex(String routeName) {
+		return routeIndex.get(routeName);
+	}
+
+}
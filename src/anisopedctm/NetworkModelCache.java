@@ -0,0 +1,42 @@
+package anisopedctm;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Network model cache
+ *
+ * Network models of a group of boards chosen by the caller (e.g., a batch of scenarios, see
+ * Board(String, NetworkModelCache, Numerics)). Boards of scenarios with the same network (see
+ * NetworkModel.key) share one model, which is loaded by the first of them. The models are kept
+ * as long as the cache is in use; boards may be constructed concurrently.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class NetworkModelCache {
+
+	//models by key of their network
+	private final ConcurrentHashMap<String, NetworkModel> models;
+
+	// constructor
+	public NetworkModelCache() {
+		models = new ConcurrentHashMap<String, NetworkModel>();
+	}
+
+	//model of the network of the scenario (loaded on first use)
+	public NetworkModel get(Input input, Parameter param) {
+		return models.computeIfAbsent(NetworkModel.key(param), k -> new NetworkModel(input, param));
+	}
+
+	//number of models
+	public int size() {
+		return models.size();
+	}
+
+	//release all models
+	public void clear() {
+		models.clear();
+	}
+
+}
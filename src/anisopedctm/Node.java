@@ -1,8 +1,6 @@
 package anisopedctm;
 
-import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Hashtable;
 
 /**
  * Node class
@@ -16,12 +14,6 @@ public class Node {
 	private HashSet<Integer> inLinks;  // list of all in links
 	private HashSet<Integer> outLinks;  // list of all out links
 	
-	// key = routeName, value = node potential
-	private Hashtable<String,Double> routePotentials;
-	
-	// key = routeName, value = denominator of route choice model
-	private Hashtable<String,Double> rChoiceDenom;
-	
 	// set of adjacent cells (contains two elements, one may be equal to "none")
 	private HashSet<String> adjacentCells;
 	
@@ -33,10 +25,6 @@ public class Node {
 		inLinks = new HashSet<Integer>();
 		outLinks = new HashSet<Integer>();
 		
-		routePotentials = new Hashtable<String,Double>();
-		
-		rChoiceDenom = new Hashtable<String,Double>();
-		
 		adjacentCells = new HashSet<String>();
 		adjacentCells.add(neighborCellA);
 		adjacentCells.add(neighborCellB);
@@ -68,93 +56,59 @@ public class Node {
 		return associatedZones.contains(zoneName);
 	}
 
-	public void setPotential(String routeName, double pot) {
-		this.routePotentials.put(routeName, pot);
-	}
-	
-	public double getPotential(String routeName) {
-		return this.routePotentials.get(routeName);
-	}
-	
-	//check if node potential is defined for a given route
-	//useful to check if a route involves current node
-	public boolean containsRoutePotential(String routeName){
-		return routePotentials.containsKey(routeName);
-	}
-	
-	//check if a link is available for a given route
-	//rational: check if for destination node of link a potential is defined 
-	public boolean containsOutLink(Hashtable<Integer, Link> linkList,
-			Hashtable<Integer, Node> nodeList, String routeName, int targLinkID){
-		
-		Link curLink = linkList.get(targLinkID); //target link
-		
-		int curDestNodeID = curLink.getDestNode(); //ID of destination node of target link
-		
-		Node curDestNode = nodeList.get(curDestNodeID); //destination node of target link
+	//pre-compute route choice model at this node: denominators and split fractions
+	//towards all feasible out links (numerators are stored in split table before normalization)
+	//nodeIdx: dense index of this node in the compiled network
+	public void computeRouteChoice(Network net, int nodeIdx, Parameter param) {
 		
-		//if destination node of target link has a defined potential for the route,
-		//the target link is a feasible choice. True is returned
-		return curDestNode.containsRoutePotential(routeName);
-	}
-	
-	public void computeRouteChoiceDenominator(Hashtable<Integer, Link> linkList,
-			Hashtable<Integer, Node> nodeList, Parameter param) {
-		
-		String curRouteName; //container for current route
-		int curDestNodeID; //ID of current destination node
+		int outLink; //dense index of current out link
 		double nodePot; //container for current potential of current node and route
 		double denom; //container for current denominator
+		double frac; //container for current split fraction
 		double eta = param.getMu(); //route choice parameter
 		
-		//iterate through routes that are available on current node
-		Enumeration<String> routeKeys = routePotentials.keys();
-		
-		while(routeKeys.hasMoreElements()) {
-			curRouteName = routeKeys.nextElement();
+		//iterate through potential fields that are available on current node
+		//(denominators and split fractions are shared by all routes of a field)
+		for (int f = 0; f < net.numFields; f++) {
+			int r = net.fieldRoute[f]; //representative route of field
+
+			//route choice of fields with unchanged potentials is still valid
+			if (!net.fieldUpdated[f] || !net.hasPotential(r, nodeIdx)) {
+				continue;
+			}
+
+			boolean[] feasible = net.splitFeasible[f];
+			double[] split = net.splitFrac[f];
 		    
 			denom = 0.0; //reset denominator
 			
-			for (int outLinkID : outLinks){
-				//check if outLink leads to a node with a defined potential for curRoute
-				if (this.containsOutLink(linkList, nodeList, curRouteName, outLinkID)){
-					//ID of current destination node
-					curDestNodeID = linkList.get(outLinkID).getDestNode(); 
-					
-					//potential of destination node on outLink for curRoute
-					nodePot = nodeList.get(curDestNodeID).getPotential(curRouteName);
+			for (int k = net.nodeOutPtr[nodeIdx]; k < net.nodeOutPtr[nodeIdx+1]; k++){
+				//check if out link leads to a node with a defined potential for route
+				if (feasible[k]){
+					outLink = net.nodeOutLinks[k];
+
+					//potential of destination node on outLink for route
+					nodePot = net.potential[r][net.linkDestNode[outLink]];
 					
+					//logit-summand (numerator of split fraction)
+					split[k] = Math.exp(-eta*nodePot);
+
 					//add logit-summand to denominator
-					denom += Math.exp(-eta*nodePot);
+					denom += split[k];
 				}
 			}
 			
-			//put pre-computed route choice denominator to corresponding hash table
-			rChoiceDenom.put(curRouteName, denom);
-		}
-	}
-	
-	public double getRouteChoiceFrac(Hashtable<Integer, Link> linkList,
-			Hashtable<Integer, Node> nodeList, String routeName, int targLink, Parameter param) {
-		
-		final double eta = param.getMu(); //route choice parameter
-		Link tLink = linkList.get(targLink); //target link
-		Node tNode = nodeList.get(tLink.getDestNode()); //corresponding target node
-		
-		//get route-specific potential of target node
-		double tNodePot = tNode.getPotential(routeName);
-		
-		//retrieve pre-computed denominator of route choice model
-		double rChDenom = rChoiceDenom.get(routeName);
-				
-		// compute logit-based route choice fraction
-		if(Math.exp(-eta*tNodePot)/rChDenom < 1e-14)
-		{
-			return 0.0;
-		}
-		else
-		{	
-			return Math.exp(-eta*tNodePot)/rChDenom;
+			//store pre-computed route choice denominator
+			net.rChoiceDenom[r][nodeIdx] = denom;
+
+			//compute logit-based route choice fractions
+			for (int k = net.nodeOutPtr[nodeIdx]; k < net.nodeOutPtr[nodeIdx+1]; k++){
+				if (feasible[k]){
+					frac = split[k]/denom;
+
+					split[k] = (frac < 1e-14) ? 0.0 : frac;
+				}
+			}
 		}
 	}
 	
@@ -0,0 +1,128 @@
+package anisopedctm;
+
+import java.util.Arrays;
+
+/**
+ * Node heap
+ *
+ * Indexed binary min-heap of dense node indices, ordered by an external key array
+ * (e.g., node potentials of a route). Supports decreasing the key of a contained node.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class NodeHeap {
+
+	private final int[] heap; //nodes in heap order
+	private final int[] pos; //position of node in heap (-1 if not contained)
+	private int size; //number of nodes in heap
+
+	private double[] key; //keys of nodes (by dense node index)
+
+	// constructor (empty heap for nodes 0..numNodes-1)
+	public NodeHeap(int numNodes) {
+		heap = new int[numNodes];
+		pos = new int[numNodes];
+		Arrays.fill(pos, -1);
+		size = 0;
+	}
+
+	//remove all nodes and use new keys
+	public void reset(double[] keys) {
+		for (int i = 0; i < size; i++) {
+			pos[heap[i]] = -1;
+		}
+		size = 0;
+		key = keys;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int node) {
+		return pos[node] >= 0;
+	}
+
+	//insert node with its current key
+	public void insert(int node) {
+		heap[size] = node;
+		pos[node] = size;
+		size++;
+
+		siftUp(size - 1);
+	}
+
+	//restore heap order after the key of a contained node has been decreased
+	public void decreaseKey(int node) {
+		siftUp(pos[node]);
+	}
+
+	//remove and return node with minimal key
+	public int extractMin() {
+		int minNode = heap[0];
+
+		size--;
+		pos[minNode] = -1;
+
+		if (size > 0) {
+			heap[0] = heap[size];
+			pos[heap[0]] = 0;
+
+			siftDown(0);
+		}
+
+		return minNode;
+	}
+
+	private void siftUp(int i) {
+		int node = heap[i];
+		double nodeKey = key[node];
+
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+
+			if (key[heap[parent]] <= nodeKey) {
+				break;
+			}
+
+			heap[i] = heap[parent];
+			pos[heap[i]] = i;
+			i = parent;
+		}
+
+		heap[i] = node;
+		pos[node] = i;
+	}
+
+	private void siftDown(int i) {
+		int node = heap[i];
+		double nodeKey = key[node];
+
+		while (true) {
+			int child = 2*i + 1;
+
+			if (child >= size) {
+				break;
+			}
+
+			//smaller of both children
+			if (child + 1 < size && key[heap[child+1]] < key[heap[child]]) {
+				child++;
+			}
+
+			if (nodeKey <= key[heap[child]]) {
+				break;
+			}
+
+			heap[i] = heap[child];
+			pos[heap[i]] = i;
+			i = child;
+		}
+
+		heap[i] = node;
+		pos[node] = i;
+	}
+
+}
@@ -0,0 +1,259 @@
+package anisopedctm;
+
+/**
+ * Numerical configuration of a simulation
+ *
+ * Tolerances, solver limits, thread counts and options of the simulation engine. A
+ * configuration is immutable: it is fixed when a board is created (see Parameter.numerics)
+ * and can be shared by boards running concurrently. Configurations are built with a
+ * Builder holding the default values, e.g., Numerics.builder().numStepThreads(4).build(),
+ * or derived from an existing one, e.g., numerics.toBuilder().absTol(1e-8).build().
+ * Settings which change simulation results are part of resultKey().
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public final class Numerics {
+
+	//default configuration
+	public static final Numerics DEFAULT = builder().build();
+
+	//numerical tolerance (fragment sizes, empty network)
+	public final double absTol;
+
+	//initial guess of non-dimensional speed
+	public final double velNdInit;
+
+	//maximal number of function evaluations of solvers
+	public final int maxEvaluations;
+
+	//maximal number of iterations of solvers
+	public final int maxIterations;
+
+	//upper density bound of solvers
+	public final double maxDensity;
+
+	//absolute and relative tolerance of various solvers
+	public final double tolerance;
+
+	//step size for computation of Hessian
+	public final double stepSizeHessian;
+
+	//number of threads used by calibration
+	public final int numThreads;
+
+	//number of threads used within a time step of a single simulation (1: sequential)
+	public final int numStepThreads;
+
+	//relative change of link travel times below which node potentials are not updated (0: exact)
+	public final double potentialTol;
+
+	//repair node potentials incrementally (otherwise recomputed from scratch if travel times change)
+	public final boolean incrementalPotentials;
+
+	//interpolate tabulated fundamental diagram quantities (critical accumulation of Weidmann FD) instead
+	//of solving for them; tables are built in Parameter.setFDRChParam and validated against fdTableTol
+	public final boolean tabulateFD;
+
+	//maximal relative interpolation error of fundamental diagram tables
+	public final double fdTableTol;
+
+	//skip time steps while the network is empty, up to the next departure
+	public final boolean fastForward;
+
+	//write system state and draw pictures for skipped time steps (otherwise these outputs are skipped as well)
+	public final boolean synthesizeIdleOutput;
+
+	//maximal number of log-likelihood evaluations kept by the calibration (see ObjectiveCache; 0: no cache)
+	public final int objectiveCacheSize;
+
+	//file the evaluations are loaded from and appended to (null: kept in memory only)
+	public final String objectiveCacheFile;
+
+	// constructor (copies the settings of the builder)
+	private Numerics(Builder b) {
+		absTol = b.absTol;
+		velNdInit = b.velNdInit;
+		maxEvaluations = b.maxEvaluations;
+		maxIterations = b.maxIterations;
+		maxDensity = b.maxDensity;
+		tolerance = b.tolerance;
+		stepSizeHessian = b.stepSizeHessian;
+		numThreads = b.numThreads;
+		numStepThreads = b.numStepThreads;
+		potentialTol = b.potentialTol;
+		incrementalPotentials = b.incrementalPotentials;
+		tabulateFD = b.tabulateFD;
+		fdTableTol = b.fdTableTol;
+		fastForward = b.fastForward;
+		synthesizeIdleOutput = b.synthesizeIdleOutput;
+		objectiveCacheSize = b.objectiveCacheSize;
+		objectiveCacheFile = b.objectiveCacheFile;
+	}
+
+	//builder with default settings
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	//builder with the settings of this configuration
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	//key of the settings which change simulation results (e.g., for caching simulation results);
+	//thread counts and the settings of output and caching are not part of it
+	public String resultKey() {
+		return absTol + "," + velNdInit + "," + maxEvaluations + "," + maxIterations + "," + maxDensity + ","
+				+ tolerance + "," + potentialTol + "," + incrementalPotentials + "," + tabulateFD + ","
+				+ fdTableTol + "," + fastForward;
+	}
+
+	public String toString() {
+		return "Numerics [absTol=" + absTol + ", tolerance=" + tolerance + ", maxEvaluations=" + maxEvaluations
+				+ ", numStepThreads=" + numStepThreads + ", potentialTol=" + potentialTol
+				+ ", incrementalPotentials=" + incrementalPotentials + ", tabulateFD=" + tabulateFD
+				+ ", fastForward=" + fastForward
+				+ ", objectiveCacheSize=" + objectiveCacheSize + "]";
+	}
+
+	/**
+	 * Builder of a numerical configuration (fields hold the default settings)
+	 */
+	public static final class Builder {
+
+		private double absTol = 1e-6;
+		private double velNdInit = 0.5;
+		private int maxEvaluations = 1000;
+		private int maxIterations = 1000;
+		private double maxDensity = 5.4;
+		private double tolerance = 1e-6;
+		private double stepSizeHessian = 1e-4;
+		private int numThreads = Runtime.getRuntime().availableProcessors();
+		private int numStepThreads = 1;
+		private double potentialTol = 0.0;
+		private boolean incrementalPotentials = true;
+		private boolean tabulateFD = false;
+		private double fdTableTol = 1e-9;
+		private boolean fastForward = true;
+		private boolean synthesizeIdleOutput = true;
+		private int objectiveCacheSize = 10000;
+		private String objectiveCacheFile = null;
+
+		private Builder() {
+		}
+
+		//copy of the settings of a configuration
+		private Builder(Numerics n) {
+			absTol = n.absTol;
+			velNdInit = n.velNdInit;
+			maxEvaluations = n.maxEvaluations;
+			maxIterations = n.maxIterations;
+			maxDensity = n.maxDensity;
+			tolerance = n.tolerance;
+			stepSizeHessian = n.stepSizeHessian;
+			numThreads = n.numThreads;
+			numStepThreads = n.numStepThreads;
+			potentialTol = n.potentialTol;
+			incrementalPotentials = n.incrementalPotentials;
+			tabulateFD = n.tabulateFD;
+			fdTableTol = n.fdTableTol;
+			fastForward = n.fastForward;
+			synthesizeIdleOutput = n.synthesizeIdleOutput;
+			objectiveCacheSize = n.objectiveCacheSize;
+			objectiveCacheFile = n.objectiveCacheFile;
+		}
+
+		public Builder absTol(double absTol) {
+			this.absTol = absTol;
+			return this;
+		}
+
+		public Builder velNdInit(double velNdInit) {
+			this.velNdInit = velNdInit;
+			return this;
+		}
+
+		public Builder maxEvaluations(int maxEvaluations) {
+			this.maxEvaluations = maxEvaluations;
+			return this;
+		}
+
+		public Builder maxIterations(int maxIterations) {
+			this.maxIterations = maxIterations;
+			return this;
+		}
+
+		public Builder maxDensity(double maxDensity) {
+			this.maxDensity = maxDensity;
+			return this;
+		}
+
+		public Builder tolerance(double tolerance) {
+			this.tolerance = tolerance;
+			return this;
+		}
+
+		public Builder stepSizeHessian(double stepSizeHessian) {
+			this.stepSizeHessian = stepSizeHessian;
+			return this;
+		}
+
+		public Builder numThreads(int numThreads) {
+			this.numThreads = numThreads;
+			return this;
+		}
+
+		public Builder numStepThreads(int numStepThreads) {
+			this.numStepThreads = numStepThreads;
+			return this;
+		}
+
+		public Builder potentialTol(double potentialTol) {
+			this.potentialTol = potentialTol;
+			return this;
+		}
+
+		public Builder incrementalPotentials(boolean incrementalPotentials) {
+			this.incrementalPotentials = incrementalPotentials;
+			return this;
+		}
+
+		public Builder tabulateFD(boolean tabulateFD) {
+			this.tabulateFD = tabulateFD;
+			return this;
+		}
+
+		public Builder fdTableTol(double fdTableTol) {
+			this.fdTableTol = fdTableTol;
+			return this;
+		}
+
+		public Builder fastForward(boolean fastForward) {
+			this.fastForward = fastForward;
+			return this;
+		}
+
+		public Builder synthesizeIdleOutput(boolean synthesizeIdleOutput) {
+			this.synthesizeIdleOutput = synthesizeIdleOutput;
+			return this;
+		}
+
+		public Builder objectiveCacheSize(int objectiveCacheSize) {
+			this.objectiveCacheSize = objectiveCacheSize;
+			return this;
+		}
+
+		public Builder objectiveCacheFile(String objectiveCacheFile) {
+			this.objectiveCacheFile = objectiveCacheFile;
+			return this;
+		}
+
+		public Numerics build() {
+			return new Numerics(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,238 @@
+package anisopedctm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of objective function evaluations
+ *
+ * Log-likelihood and travel time summary (mean and standard deviation of the simulated travel
+ * times of all people) of simulations, keyed by the fingerprint of the board (see
+ * Board.getFingerprint) and the exact bits of the parameter vector. Simulations are
+ * deterministic, hence an entry is valid for any board with the same fingerprint. At most
+ * maxSize entries are kept; the least recently used entry is dropped first.
+ *
+ * If a file is given, its entries are loaded on construction and new entries are appended by
+ * save(), such that repeated calibrations of the same data reuse earlier simulations. The first
+ * line is a header with the version of the file format and of the simulation engine (see
+ * Parameter.EngineVersion); a file with another header is discarded and overwritten by save().
+ * Each further line holds the key followed by log-likelihood, mean and standard deviation of the
+ * travel time (hexadecimal floating point, exact).
+ *
+ * All methods are synchronized (evaluations of concurrent local searches share the cache).
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class ObjectiveCache {
+
+	//version of file format
+	private static final int FORMAT_VERSION = 1;
+
+	//first line of file
+	private static final String FILE_HEADER = "#objective cache, format " + FORMAT_VERSION + ", engine " +
+			Parameter.EngineVersion;
+
+	//cached evaluation
+	public static class Entry {
+		public final double logLikelihood;
+		public final double travelTimeMean;
+		public final double travelTimeStdDev;
+
+		public Entry(double logLikelihood, double travelTimeMean, double travelTimeStdDev) {
+			this.logLikelihood = logLikelihood;
+			this.travelTimeMean = travelTimeMean;
+			this.travelTimeStdDev = travelTimeStdDev;
+		}
+	}
+
+	private final int maxSize;
+	private final String filePath; //null: no persistence
+	private boolean fileCurrent; //false: file of another version (overwritten by save)
+
+	//entries in access order (least recently used first)
+	private final LinkedHashMap<String, Entry> entries;
+
+	//keys of entries added since loading or last save (appended to file by save)
+	private final ArrayList<String> unsavedKeys;
+	private final ArrayList<Entry> unsavedEntries;
+
+	//number of lookups and hits
+	private long numLookups;
+	private long numHits;
+
+	// constructor
+	public ObjectiveCache(int maxSize, String filePath) {
+		this.maxSize = maxSize;
+		this.filePath = filePath;
+		fileCurrent = true;
+
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > ObjectiveCache.this.maxSize;
+			}
+		};
+
+		unsavedKeys = new ArrayList<String>();
+		unsavedEntries = new ArrayList<Entry>();
+
+		if (filePath != null && maxSize > 0) {
+			load();
+		}
+	}
+
+	//key of parameter vector for a board with given fingerprint
+	public static String key(String fingerprint, double[] paramVec) {
+		StringBuilder key = new StringBuilder(fingerprint);
+
+		for (int i = 0; i < paramVec.length; i++) {
+			key.append(i == 0 ? ':' : ',').append(Long.toHexString(Double.doubleToLongBits(paramVec[i])));
+		}
+
+		return key.toString();
+	}
+
+	//cached evaluation, null if not available
+	public synchronized Entry get(String key) {
+		numLookups++;
+
+		Entry entry = entries.get(key);
+
+		if (entry != null) {
+			numHits++;
+		}
+
+		return entry;
+	}
+
+	//cached evaluation without counting a lookup (e.g., for reporting), null if not available
+	public synchronized Entry peek(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, Entry entry) {
+		if (maxSize > 0) {
+			entries.put(key, entry);
+
+			if (filePath != null) {
+				unsavedKeys.add(key);
+				unsavedEntries.add(entry);
+			}
+		}
+	}
+
+	//travel time summary of the last simulation of board: mean and standard deviation over all people
+	public static Entry summarize(double logLikelihood, Board board) {
+		double numPeople = 0.0;
+		double sum = 0.0;
+		double sumSquares = 0.0;
+
+		for (Group group : board.getGroupList().values()) {
+			double mean = group.getMeanTTSimulated();
+			double stdDev = group.getStdDevTTSimulated();
+			double num = group.getNumPeople();
+
+			if (!Double.isNaN(mean) && !Double.isNaN(stdDev)) {
+				numPeople += num;
+				sum += num*mean;
+				sumSquares += num*(stdDev*stdDev + mean*mean);
+			}
+		}
+
+		double mean = sum/numPeople;
+
+		return new Entry(logLikelihood, mean, Math.sqrt(Math.max(0.0, sumSquares/numPeople - mean*mean)));
+	}
+
+	//load entries of file (if it exists and has been written by this version); later lines are more recent
+	private void load() {
+		File file = new File(filePath);
+
+		if (!file.exists()) {
+			return;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line = reader.readLine();
+
+			if (line == null || !line.equals(FILE_HEADER)) {
+				System.out.println("Objective cache " + filePath + " has been written by another version " +
+						"and is discarded.");
+				fileCurrent = false;
+				return;
+			}
+
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+
+				if (fields.length == 4) {
+					entries.put(fields[0], new Entry(Double.parseDouble(fields[1]),
+							Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			System.out.println("Objective cache " + filePath + " could not be loaded: " + e);
+		}
+	}
+
+	//append entries added since last save to file
+	public synchronized void save() {
+		if (filePath == null || unsavedKeys.isEmpty()) {
+			return;
+		}
+
+		//append to file written by this version, otherwise start a new file
+		boolean append = fileCurrent && new File(filePath).exists();
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, append))) {
+			if (!append) {
+				writer.write(FILE_HEADER + "\n");
+				fileCurrent = true;
+			}
+
+			for (int i = 0; i < unsavedKeys.size(); i++) {
+				Entry entry = unsavedEntries.get(i);
+
+				writer.write(unsavedKeys.get(i) + " " + Double.toHexString(entry.logLikelihood) + " " +
+						Double.toHexString(entry.travelTimeMean) + " " +
+						Double.toHexString(entry.travelTimeStdDev) + "\n");
+			}
+
+			unsavedKeys.clear();
+			unsavedEntries.clear();
+		}
+		catch (IOException e) {
+			System.out.println("Objective cache " + filePath + " could not be saved: " + e);
+		}
+	}
+
+	public synchronized long getNumLookups() {
+		return numLookups;
+	}
+
+	public synchronized long getNumHits() {
+		return numHits;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	//hit rate (0 without lookups)
+	public synchronized double getHitRate() {
+		return (numLookups > 0) ? (double) numHits/numLookups : 0.0;
+	}
+
+}
@@ -0,0 +1,50 @@
+package anisopedctm;
+
+/**
+ * Orientation of a link
+ *
+ * The 12 possible orientations of a link within a cell (origin side -> destination side)
+ * and their angles in degrees (see Parameter.linkAngles). The ordinal of an orientation
+ * indexes the per-orientation arrays of the fundamental diagrams, and sets of orientations
+ * are represented as bitmasks (bit ordinal).
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public enum Orientation {
+
+	N_E("N->E"), N_S("N->S"), N_W("N->W"),
+	E_N("E->N"), E_W("E->W"), E_S("E->S"),
+	S_E("S->E"), S_N("S->N"), S_W("S->W"),
+	W_S("W->S"), W_E("W->E"), W_N("W->N");
+
+	//number of orientations
+	public static final int NUM = values().length;
+
+	private static final Orientation[] BY_ORDINAL = values();
+
+	public final String label; //e.g., "N->E"
+	public final int angle; //angle in degrees
+
+	Orientation(String lbl) {
+		label = lbl;
+		angle = Parameter.linkAngles.get(lbl);
+	}
+
+	//orientation of label (e.g., "N->E")
+	public static Orientation fromLabel(String lbl) {
+		for (Orientation o : BY_ORDINAL) {
+			if (o.label.equals(lbl)) {
+				return o;
+			}
+		}
+
+		throw new IllegalArgumentException("Invalid orientation " + lbl);
+	}
+
+	public static Orientation get(int ordinal) {
+		return BY_ORDINAL[ordinal];
+	}
+
+}
@@ -0,0 +1,72 @@
+package anisopedctm;
+
+import java.util.Arrays;
+
+/**
+ * Outbox of a link
+ *
+ * Outflows of a link computed during propagation, one row per fragment (groupID) and
+ * one slot per out link of the destination node of the link (NaN if no flow to the out link).
+ * The outbox is only written by its link, and read by the target links when they gather
+ * their inflows.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class Outbox {
+
+	private static final int INIT_CAPACITY = 4; //initial number of rows
+
+	private final int numSlots; //number of out link slots per row
+
+	private int size; //number of rows
+	private int[] groupIDs; //groupID of row
+	private double[] flow; //outflows (numSlots per row)
+
+	// constructor
+	public Outbox(int numSlots) {
+		this.numSlots = numSlots;
+
+		size = 0;
+		groupIDs = new int[INIT_CAPACITY];
+		flow = new double[INIT_CAPACITY*numSlots];
+	}
+
+	//number of rows
+	public int size() {
+		return size;
+	}
+
+	public int getGroupID(int row) {
+		return groupIDs[row];
+	}
+
+	//outflow of row towards out link slot (NaN if none)
+	public double getFlow(int row, int slot) {
+		return flow[row*numSlots + slot];
+	}
+
+	public void setFlow(int row, int slot, double d) {
+		flow[row*numSlots + slot] = d;
+	}
+
+	//add row for groupID without outflows; returns row
+	public int add(int groupID) {
+		if (size == groupIDs.length) {
+			groupIDs = Arrays.copyOf(groupIDs, 2*size);
+			flow = Arrays.copyOf(flow, 2*size*numSlots);
+		}
+
+		groupIDs[size] = groupID;
+		Arrays.fill(flow, size*numSlots, (size+1)*numSlots, Double.NaN);
+
+		return size++;
+	}
+
+	//remove all rows
+	public void clear() {
+		size = 0;
+	}
+
+}
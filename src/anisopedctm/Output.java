@@ -24,7 +24,9 @@ public class Output {
 
 
 	// Writes travel time distribution and mean travel time for each group.
-	public void writeTravelTime(Hashtable<Integer, Group> groupList, Parameter param) {
+	//potErrorBound: maximum relative error bound of node potentials (written if potentials are
+	//approximate, i.e., numerics.potentialTol > 0)
+	public void writeTravelTime(Hashtable<Integer, Group> groupList, Parameter param, double potErrorBound) {
 
 		//groupID, routeName, groupSize, depTime, travelTime, fragSize
 		String curTTDist;
@@ -42,6 +44,13 @@ public class Output {
 		travelTimeDist.add("# groupID, routeName, groupSize, depTime, travelTime, fragSize \n");
 		travelTimeMean.add("# groupID, routeName, groupSize, depTime, weightedTravelTime, rel_loss \n");
 
+		if (param.numerics.potentialTol > 0.0) {
+			String errorBound = "# maximum relative error bound of node potentials: " + potErrorBound + "\n";
+
+			travelTimeDist.add(errorBound);
+			travelTimeMean.add(errorBound);
+		}
+
 		//enumeration of groups
 		Enumeration<Integer> groupKeys = groupList.keys();
 
@@ -111,9 +120,15 @@ public class Output {
 		// Invert the array of travelTimeMean
 		ArrayList<String> travelTimeMean_Inverted = new ArrayList<String>();
 
-		travelTimeMean_Inverted.add(travelTimeMean.get(0)); //keep the header
+		int numHeaderLines = (param.numerics.potentialTol > 0.0) ? 2 : 1;
+
+		//keep the header
+		for(int i=0; i < numHeaderLines; i++)
+		{
+			travelTimeMean_Inverted.add(travelTimeMean.get(i));
+		}
 
-		for(int i=travelTimeMean.size()-1; i > 0; i--)
+		for(int i=travelTimeMean.size()-1; i >= numHeaderLines; i--)
 		{
 			travelTimeMean_Inverted.add(travelTimeMean.get(i));
 		}
@@ -145,22 +160,21 @@ public class Output {
 		int curLinkID;
 		Link curLink;
 		String curCellName; //corresponding cell name
-		Hashtable<Integer, Fragment> curFragList; //fragment list on current link
+		FragmentTable curFragTable; //fragment table of current link
 
 		while(linkKeys.hasMoreElements()) {
 			curLinkID = linkKeys.nextElement();
 			curLink = linkList.get(curLinkID);
 			curCellName = curLink.cellName;
-			curFragList = curLink.getFragList();
+			curFragTable = curLink.getFragTable();
 
 			//loop over fragments on each link
-			Enumeration<Integer> fragKeys = curFragList.keys();
 			int groupID; //fragment key equals group ID
 			double fragSize;
 
-			while (fragKeys.hasMoreElements()) {
-				groupID = fragKeys.nextElement();
-				fragSize = curFragList.get(groupID).getNumPeople();
+			for (int e = curFragTable.first(); e >= 0; e = curFragTable.next(e)) {
+				groupID = curFragTable.getGroupID(e);
+				fragSize = curFragTable.getNumPeople(e);
 
 				//timeInterval, linkID, cellName, groupID, groupSizeOnLink
 				curSystemStateEntry = String.valueOf(timeInterval) + ", " +
@@ -230,7 +244,7 @@ public class Output {
 			for (int i=0; i < calib.getEigValuesHessianLL().length; i++){
 				header += calib.getEigValuesHessianLL()[i];
 				
-				if (calib.getEigValuesHessianLL()[i] > -Parameter.absTol){
+				if (calib.getEigValuesHessianLL()[i] > -param.numerics.absTol){
 					nonNegativeEigenvalues = true;
 				}
 				
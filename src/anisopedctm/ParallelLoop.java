@@ -0,0 +1,85 @@
+package anisopedctm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel loop
+ *
+ * Executes a loop over the range 0..n-1 partitioned into fixed chunks of consecutive indices.
+ * The partition only depends on n and the number of chunks, not on the scheduling of the
+ * threads. Hence, if the chunks write to disjoint data, the result is identical to the one
+ * of the sequential loop. Without pool (or with n smaller than two chunks), the loop is
+ * executed sequentially in the calling thread.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class ParallelLoop {
+
+	//body of loop, executed on chunk [from, to)
+	public interface Body {
+		void run(int from, int to);
+	}
+
+	private static final int CHUNKS_PER_THREAD = 4; //number of chunks per thread (load balancing)
+
+	private final ForkJoinPool pool; //executor (null: sequential)
+
+	// constructor
+	public ParallelLoop(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	//execute body on all chunks of 0..n-1
+	public void run(int n, Body body) {
+		int numChunks = (pool == null) ? 1 : Math.min(n, CHUNKS_PER_THREAD*pool.getParallelism());
+
+		if (numChunks < 2) {
+			body.run(0, n);
+		} else {
+			pool.invoke(new ChunkTask(body, n, numChunks, 0, numChunks));
+		}
+	}
+
+	//task executing the chunks firstChunk..lastChunk-1 (split recursively)
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Body body;
+		private final int n;
+		private final int numChunks;
+		private final int firstChunk;
+		private final int lastChunk;
+
+		ChunkTask(Body body, int n, int numChunks, int firstChunk, int lastChunk) {
+			this.body = body;
+			this.n = n;
+			this.numChunks = numChunks;
+			this.firstChunk = firstChunk;
+			this.lastChunk = lastChunk;
+		}
+
+		protected void compute() {
+			if (lastChunk - firstChunk == 1) {
+				//bounds of chunk (chunk sizes differ by at most one)
+				int from = (int) ((long) firstChunk*n/numChunks);
+				int to = (int) ((long) lastChunk*n/numChunks);
+
+				body.run(from, to);
+			} else {
+				int midChunk = (firstChunk + lastChunk) >>> 1;
+
+				invokeAll(new ChunkTask(body, n, numChunks, firstChunk, midChunk),
+						new ChunkTask(body, n, numChunks, midChunk, lastChunk));
+			}
+		}
+	}
+
+}
@@ -15,9 +15,6 @@ public class Parameter {
 	 * fundamental diagram and route choice
 	 */
 
-	// numerical tolerance
-	public static double absTol = 1e-6;
-
 	public static final Hashtable<String,Integer> linkAngles = new Hashtable<String,Integer>() {/**
 		 *
 		 */
@@ -34,6 +31,7 @@ public class Parameter {
 
 	// Shape parameters
 	private Double[] shapeParam;
+	private FunDiagTable fdTable; //tabulated fundamental diagram quantity (null if not tabulated)
 
 	// parameter of route choice model (a priori known)
 	private Double mu; //weight in logit model
@@ -48,14 +46,8 @@ public class Parameter {
 	private Double minLinkLength; //shortest link length
 	private Double deltaT; // deltaT=minLinkLength/freeSpeed
 
-	//numerical parameters associated with FunDiag
-	public static double velNdInit = 0.5; //initial guess of non-dimensional speed
-	public static int maxEvaluations = 1000; //parameter of Levenberg-Marquardt and Newton-Raphson algorithm
-	public static int maxIterations = 1000; //parameter of Levenberg-Marquardt algorithm
-	public static double maxDensity = 5.4; //upper density bound in Brent's algorithm (1D FD CP)
-	public static double Tolerance = 1e-6; //absolute and relative tolerance of various solvers
-
-	public static double stepSizeHessian = 1e-4; //step size for computation of Hessian
+	//numerical configuration (tolerances, solver limits, threads, engine options)
+	public final Numerics numerics;
 
 	// maximum number of lines and maximum line length in layout file
 	public static final int LimitLinesNumber = 20000;
@@ -64,6 +56,10 @@ public class Parameter {
 	// maximum travel time (simulation stops MaxTravelTime after the last departure of a group)
 	public static final int MaxTravelTime = 1000;
 
+	// version of the simulation engine, to be incremented whenever a change of the engine changes
+	// simulation results (persisted objective caches of other versions are discarded, see ObjectiveCache)
+	public static final int EngineVersion = 1;
+
 	// Name of the fundamental diagrams in use
 	private final String funDiagName;
 
@@ -109,7 +105,6 @@ public class Parameter {
 	public final String fileNameCrossValidStat;
 	
 	//parameter for calibration
-	public static int numThreads = Runtime.getRuntime().availableProcessors();
 	private double[] paramLowerBound;
 	private double[] paramUpperBound;
 	private final String calibrationMode;
@@ -119,7 +114,10 @@ public class Parameter {
 	public Parameter(String inDir, String outDir, String paramFile, String paramRangeFile,
 			String linkFile, String cellFile, String routeFile, String funDiag, double cflFact,
 			boolean textOutput, boolean textDebug, boolean visualOut, boolean numbers, boolean cellNames, String correspFile,
-			String demandFormat, String demandFile, boolean writeAggTable, String calibMode, double aggPerCalib) {
+			String demandFormat, String demandFile, boolean writeAggTable, String calibMode, double aggPerCalib,
+			Numerics numerics) {
+
+		this.numerics = numerics;
 
 		outputDir = outDir;
 		inputDir = inDir;
@@ -184,6 +182,13 @@ public class Parameter {
 		
 		this.mu = mu;
 
+		//tabulate fundamental diagram quantities for current shape parameters
+		if (numerics.tabulateFD && funDiagName.equals("Weidmann")) {
+			fdTable = FunDiagWeidmann.tabulate(shapeParam, numerics.fdTableTol);
+		} else {
+			fdTable = null;
+		}
+
 		// Recaculate the deltaT (Used for the Calibration)
 		if(!this.minLinkLength.isNaN())
 		{
@@ -234,6 +239,10 @@ public class Parameter {
 		return shapeParam;
 	}
 
+	public FunDiagTable getFDTable() {
+		return fdTable;
+	}
+
 	public String getParamName(int i) {
 		return paramNames[i];
 	}
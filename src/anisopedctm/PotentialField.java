@@ -1,134 +1,407 @@
 package anisopedctm;
 
-import java.util.Enumeration;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Potential Field class
  *
+ * Node potentials are maintained incrementally over time steps (dynamic shortest paths,
+ * in the style of Ramalingam and Reps). The potentials use a snapshot of the link travel
+ * times, which is only updated for links whose travel time changed by more than the
+ * relative tolerance Numerics.potentialTol. Each step, only the parts of the shortest path
+ * trees affected by the updated links are repaired:
+ * - nodes whose tree path contains a link with increased travel time are reset and
+ *   re-seeded from their unaffected predecessors,
+ * - links with decreased travel time seed their destination nodes,
+ * - the seeded nodes are propagated by a label-correcting search ordered by potential.
+ * With zero tolerance, the repaired potentials are identical to the ones computed from scratch.
+ * Otherwise, every potential (excluding the source/sink offset) is within the relative error
+ * bound reported by getErrorBound() of the potential based on the current travel times.
+ *
  * @author Flurin Haenseler, Gael Lederrey
  *
  */
 
 public class PotentialField {
+
+	//potential of source/sink nodes which are not the destination of a route
+	private static final double SOURCE_SINK_POT = 1e10;
+
+	//work space of the shortest path search (one per thread, fields may be processed concurrently)
+	private static class Workspace {
+		final boolean[] marked; //nodes affected by a travel time increase (by dense node index)
+		final int[] affected; //list of marked nodes
+		final NodeHeap queue; //queue of nodes to propagate ordered by potential
+
+		Workspace(int numNodes) {
+			marked = new boolean[numNodes];
+			affected = new int[numNodes];
+			queue = new NodeHeap(numNodes);
+		}
+	}
+
+	private final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>();
+
+	//network and parameters of current computation (read by parallel phases)
+	private Network curNet;
+	private Parameter curParam;
+
+	//network the state below refers to
+	private Network stateNet;
+
+	//true if all potential fields have to be computed from scratch
+	private boolean fullUpdate;
+
+	//link travel times (non-dimensional) used by the potentials (by dense link index)
+	private double[] usedTravTime;
+
+	//links whose used travel time was updated in the current time step, and their previous travel time
+	private int[] updatedLinks;
+	private double[] prevTravTime;
+	private int numUpdatedLinks;
+
+	//shortest path trees: link towards node from its parent (-1 if none) [field][node]
+	private int[][] parentLink;
+
+	//nodes on route of field [field][node]
+	private boolean[][] fieldNode;
+
+	//relative error bound of potentials in current time step, and maximum since reset
+	private double errorBound;
+	private double maxErrorBound;
+
+	//discard state: all potential fields are computed from scratch in the next time step
+	public void reset() {
+		fullUpdate = true;
+		errorBound = 0.0;
+		maxErrorBound = 0.0;
+	}
+
+	//relative error bound of potentials in current time step (0 if exact)
+	public double getErrorBound() {
+		return errorBound;
+	}
+
+	//maximum relative error bound of potentials since reset
+	public double getMaxErrorBound() {
+		return maxErrorBound;
+	}
+
+	//number of links whose travel time was updated in the current time step
+	public int getNumUpdatedLinks() {
+		return numUpdatedLinks;
+	}
+
 	//compute node potentials for all routes, and pre-compute route choice model
-	public void computeAllNodePotentials(Hashtable<Integer, Link> linkList, Hashtable<Integer, Node> nodeList,
-			Hashtable<String, Route> routeList, HashSet<Integer> sourceSinkNodes, Parameter param) {
+	//routes (and nodes) are independent and processed in parallel by loop
+	public void computeAllNodePotentials(Network net, Parameter param, ParallelLoop loop) {
+		curNet = net;
+		curParam = param;
+
+		if (net != stateNet) {
+			initState(net);
+		}
+
+		updateTravTimes(net);
 
-		//compute route-specific node potentials for each route
-		Enumeration<String> routeNames = routeList.keys();
-		String curRouteName; //name of current route
+		//potentials are unchanged if no travel time was updated
+		if (!fullUpdate && numUpdatedLinks == 0) {
+			return;
+		}
+
+		//compute route-specific node potentials for each distinct potential field
+		loop.run(net.numFields, routePhase);
 
-		while(routeNames.hasMoreElements()) {
-			curRouteName = routeNames.nextElement(); //retrieve current route name
+		//pre-compute route choice model (denominators and split fractions of updated fields)
+		loop.run(net.numNodes, routeChoicePhase);
+
+		fullUpdate = false;
+	}
+
+	//compute node potentials for all nodes for potential fields from..to-1
+	//(computed for the representative route, shared by all routes of the field)
+	private final ParallelLoop.Body routePhase = (from, to) -> {
+		for (int f = from; f < to; f++) {
+			if (fullUpdate || !curParam.numerics.incrementalPotentials) {
+				computeNodePotentialsForRoute(f, curNet);
+			} else {
+				repairNodePotentialsForRoute(f, curNet);
+			}
+		}
+	};
 
-			//compute node potentials for all nodes for given route
-			computeNodePotentialsForRoute(curRouteName, linkList, nodeList, routeList, sourceSinkNodes);
+	//compute route choice model for nodes from..to-1
+	private final ParallelLoop.Body routeChoicePhase = (from, to) -> {
+		for (int n = from; n < to; n++) {
+			curNet.nodes[n].computeRouteChoice(curNet, n, curParam);
 		}
+	};
 
-		//pre-compute route-specific denominators for route choice model
-		for (Node curNode : nodeList.values()) {
-			curNode.computeRouteChoiceDenominator(linkList, nodeList, param);
+	//allocate state for network
+	private void initState(Network net) {
+		usedTravTime = new double[net.numLinks];
+		updatedLinks = new int[net.numLinks];
+		prevTravTime = new double[net.numLinks];
+
+		parentLink = new int[net.numFields][net.numNodes];
+		fieldNode = new boolean[net.numFields][net.numNodes];
+
+		for (int f = 0; f < net.numFields; f++) {
+			int route = net.fieldRoute[f];
+
+			Arrays.fill(parentLink[f], -1);
+
+			for (int k = net.routeNodePtr[route]; k < net.routeNodePtr[route+1]; k++) {
+				fieldNode[f][net.routeNodes[k]] = true;
+			}
 		}
+
+		stateNet = net;
+		reset();
 	}
 
+	//update used travel times of links whose travel time changed by more than the tolerance
+	//and compute error bound of the potentials
+	private void updateTravTimes(Network net) {
+		numUpdatedLinks = 0;
+		errorBound = 0.0;
+
+		double tol = curParam.numerics.potentialTol;
 
-	//compute potential field associated with a route using Dijkstra's algorithm
+		for (int l = 0; l < net.numLinks; l++) {
+			double travTime = net.relTravTime(l);
+			double used = usedTravTime[l];
+
+			if (fullUpdate) {
+				usedTravTime[l] = travTime;
+				continue;
+			}
+
+			if (travTime == used) {
+				continue;
+			}
+
+			//relative change (only finite, positive travel times are tolerated)
+			double relChange = Math.abs(travTime - used)/used;
+
+			if (used > 0.0 && travTime < Double.POSITIVE_INFINITY && relChange <= tol) {
+				errorBound = Math.max(errorBound, relChange);
+			} else {
+				prevTravTime[numUpdatedLinks] = used;
+				updatedLinks[numUpdatedLinks++] = l;
+				usedTravTime[l] = travTime;
+			}
+		}
+
+		maxErrorBound = Math.max(maxErrorBound, errorBound);
+	}
+
+	//work space of current thread, (re-)allocated if network has changed
+	private Workspace getWorkspace(int numNodes) {
+		Workspace ws = workspace.get();
+
+		if (ws == null || ws.marked.length != numNodes) {
+			ws = new Workspace(numNodes);
+			workspace.set(ws);
+		}
+
+		return ws;
+	}
+
+	//compute potential field from scratch using Dijkstra's algorithm
 	//node potential = minimum distance from destination in non-dimensional time
 	//potential at destination node = 0
-	public void computeNodePotentialsForRoute(String routeName, Hashtable<Integer, Link> linkList,
-			Hashtable<Integer, Node> nodeList, Hashtable<String, Route> routeList, HashSet<Integer> sourceSinkNodes) {
+	//source/sink nodes other than the destination are fixed at SOURCE_SINK_POT, i.e., they are
+	//never relaxed but still visited (in order of their potential) to relax their neighbors
+	private void computeNodePotentialsForRoute(int field, Network net) {
+
+		int route = net.fieldRoute[field];
 
-		//current route
-		Route curRoute = routeList.get(routeName);
+		//node potentials of current route
+		double[] pot = net.potential[route];
+		int[] parent = parentLink[field];
+		boolean[] onRoute = fieldNode[field];
 
-		//set of nodes on current route
-		final Set<Integer> routeNodeIDs = curRoute.getRouteNodes();
+		int destNode = net.routeDestNode[route];
 
-		//set of relevant, unvisited nodes on current route
-		Set<Integer> unvisitedNodeIDs = new HashSet<Integer>(routeNodeIDs);
+		NodeHeap queue = getWorkspace(net.numNodes).queue;
+		queue.reset(pot);
 
-		for (int curNodeID : routeNodeIDs) {
+		for (int k = net.routeNodePtr[route]; k < net.routeNodePtr[route+1]; k++) {
 			//initialize all nodes with infinite potential
-			nodeList.get(curNodeID).setPotential(routeName, Double.MAX_VALUE);
+			pot[net.routeNodes[k]] = Double.MAX_VALUE;
+			parent[net.routeNodes[k]] = -1;
+		}
+
+		//mask source/sink nodes except the destination of the current route
+		for (int i : net.sourceSinkNodes) {
+			if (i != destNode) {
+				pot[i] = SOURCE_SINK_POT;
+
+				if (onRoute[i]) {
+					queue.insert(i);
+				}
+			}
 		}
 
 		//initialize destination node
-		int destNodeID = curRoute.getDestNodeID();
-		nodeList.get(destNodeID).setPotential(routeName, 0.0);
+		pot[destNode] = 0.0;
+		if (onRoute[destNode]) {
+			queue.insert(destNode);
+		}
+
+		propagate(pot, parent, onRoute, queue, net);
+
+		net.fieldUpdated[field] = true;
+	}
+
+	//repair potential field after the used travel times of the updated links have changed
+	private void repairNodePotentialsForRoute(int field, Network net) {
 
-		while ( !unvisitedNodeIDs.isEmpty() ){
+		int route = net.fieldRoute[field];
 
-			//next node: unvisited node with lowest potential (destination in first iteration)
-			int nextNodeID = Integer.MAX_VALUE;
-			double nextNodePot = Double.MAX_VALUE;
+		double[] pot = net.potential[route];
+		int[] parent = parentLink[field];
+		boolean[] onRoute = fieldNode[field];
 
-			double candNodePot; //potential of candidate node
+		Workspace ws = getWorkspace(net.numNodes);
+		boolean[] marked = ws.marked;
+		int[] affected = ws.affected;
+		NodeHeap queue = ws.queue;
 
-			//determine next node by iterating over set of unvisited nodes
-			//next node is node with lowest potential (destination node in first case)
-			for (int candNodeID : unvisitedNodeIDs) {
-				candNodePot = nodeList.get(candNodeID).getPotential(routeName);
+		queue.reset(pot);
 
-				//System.out.println("candNodeID: " + candNodeID);
-				//System.out.println("candNodePot: " + candNodePot);
+		int numAffected = 0;
 
-				//if candidate node has lower potential, consider it as next node
-				if (candNodePot <= nextNodePot){
-					nextNodeID = candNodeID;
-					nextNodePot = candNodePot;
+		//roots of affected subtrees: nodes whose tree link has an increased travel time
+		for (int i = 0; i < numUpdatedLinks; i++) {
+			int l = updatedLinks[i];
+			int n = net.linkDestNode[l];
+
+			if (!(usedTravTime[l] < prevTravTime[i]) && parent[n] == l && !marked[n]) {
+				marked[n] = true;
+				affected[numAffected++] = n;
+			}
+		}
+
+		//affected subtrees: descendants of roots in shortest path tree
+		for (int i = 0; i < numAffected; i++) {
+			int n = affected[i];
+
+			for (int k = net.nodeOutPtr[n]; k < net.nodeOutPtr[n+1]; k++) {
+				int l = net.nodeOutLinks[k];
+				int child = net.linkDestNode[l];
+
+				if (parent[child] == l && !marked[child]) {
+					marked[child] = true;
+					affected[numAffected++] = child;
 				}
 			}
+		}
 
+		//reset affected nodes
+		for (int i = 0; i < numAffected; i++) {
+			pot[affected[i]] = Double.MAX_VALUE;
+			parent[affected[i]] = -1;
+		}
+
+		//re-seed affected nodes from unaffected predecessors on route
+		for (int i = 0; i < numAffected; i++) {
+			int n = affected[i];
+
+			for (int k = net.nodeInPtr[n]; k < net.nodeInPtr[n+1]; k++) {
+				int l = net.nodeInLinks[k];
+				int pred = net.linkOrigNode[l];
 
-			//System.out.println("nextNodeID: " + nextNodeID);
-			//System.out.println("nextNodePot: " + nextNodePot);
+				if (onRoute[pred] && !marked[pred]) {
+					double candPot = pot[pred] + usedTravTime[l];
 
-			//check if a valid next node has been found
-			if (nextNodeID == Integer.MAX_VALUE) {
-				throw new RuntimeException("Invalid next node");
+					if (candPot < pot[n]) {
+						pot[n] = candPot;
+						parent[n] = l;
+					}
+				}
 			}
 
-			//remove next node from set of unvisited nodes
-			unvisitedNodeIDs.remove(nextNodeID);
+			if (pot[n] < Double.MAX_VALUE) {
+				queue.insert(n);
+			}
+		}
 
-			int neighborNodeID; //node of neighbor of next node
-			double linkTravelTime; //relative travel time on link connecting next node and neighbor
-			double neighborCurPot; //current potential of neighbor
-			double neighborCandPot; //alternative new potential of neighbor
+		for (int i = 0; i < numAffected; i++) {
+			marked[affected[i]] = false;
+		}
 
-			//iterate through neighbors of nextNode
-			for (int outLinkID : nodeList.get(nextNodeID).getOutLinks()) {
-				//destination node of outLink
-				neighborNodeID = linkList.get(outLinkID).getDestNode();
+		boolean updated = numAffected > 0;
 
-				//check if neighbor is in set of feasible, unvisited nodes
-				if (unvisitedNodeIDs.contains(neighborNodeID)) {
-					//get current potential of neighbor
-					neighborCurPot = nodeList.get(neighborNodeID).getPotential(routeName);
+		//seed destination nodes of links with decreased travel time
+		for (int i = 0; i < numUpdatedLinks; i++) {
+			int l = updatedLinks[i];
 
-					//get link travel time and compute candidate potential
-					linkTravelTime = linkList.get(outLinkID).getRelTravTime();
-					neighborCandPot = nextNodePot + linkTravelTime;
+			if (usedTravTime[l] < prevTravTime[i]) {
+				int orig = net.linkOrigNode[l];
+				int dest = net.linkDestNode[l];
 
-					//if alternative potential is lower than current potential, update
-					if (neighborCandPot < neighborCurPot) {
-						nodeList.get(neighborNodeID).setPotential(routeName, neighborCandPot);
-					}
+				if (onRoute[orig] && onRoute[dest] && !net.sourceSinkNode[dest]) {
+					updated |= relax(orig, l, dest, pot, parent, queue);
 				}
 			}
+		}
+
+		updated |= propagate(pot, parent, onRoute, queue, net);
+
+		net.fieldUpdated[field] = updated;
+	}
+
+	//propagate potentials from queued nodes in order of potential (label-correcting search)
+	//returns true if a potential was decreased
+	private boolean propagate(double[] pot, int[] parent, boolean[] onRoute, NodeHeap queue, Network net) {
+		boolean updated = false;
+
+		int nextNode; //queued node with lowest potential (destination in first iteration)
+		int outLink; //link connecting next node and neighbor
+		int neighborNode; //node of neighbor of next node
+
+		while (!queue.isEmpty()) {
+
+			nextNode = queue.extractMin();
 
-			// Now we will set the potential for all the Source/Sink nodes to infinity except if it's the destination
-			// node of the current route.
-			for(int i : sourceSinkNodes)
-			{
-				if(i != routeList.get(routeName).getDestNodeID())
-				{
-					nodeList.get(i).setPotential(routeName, Math.pow(10, 10));
+			//iterate through neighbors of nextNode
+			for (int k = net.nodeOutPtr[nextNode]; k < net.nodeOutPtr[nextNode+1]; k++) {
+				outLink = net.nodeOutLinks[k];
+
+				//destination node of outLink
+				neighborNode = net.linkDestNode[outLink];
+
+				//check if neighbor is on route and not masked
+				if (onRoute[neighborNode] && !net.sourceSinkNode[neighborNode]) {
+					updated |= relax(nextNode, outLink, neighborNode, pot, parent, queue);
 				}
 			}
 		}
+
+		return updated;
+	}
+
+	//relax link from node to neighbor; returns true if potential of neighbor was decreased
+	private boolean relax(int node, int link, int neighbor, double[] pot, int[] parent, NodeHeap queue) {
+		//compute candidate potential using link travel time
+		double neighborCandPot = pot[node] + usedTravTime[link];
+
+		//if alternative potential is lower than current potential, update
+		if (neighborCandPot < pot[neighbor]) {
+			pot[neighbor] = neighborCandPot;
+			parent[neighbor] = link;
+
+			if (queue.contains(neighbor)) {
+				queue.decreaseKey(neighbor);
+			} else {
+				queue.insert(neighbor);
+			}
+
+			return true;
+		}
+
+		return false;
 	}
 }
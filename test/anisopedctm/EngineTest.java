@@ -0,0 +1,228 @@
+package anisopedctm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Engine test
+ *
+ * Checks of the simulation engine on the example scenarios (run from the root directory of
+ * the repository, with src and test on the class path): java anisopedctm.EngineTest
+ *
+ * Every check reports its results on screen; the program terminates with exit status 1 if
+ * any check fails.
+ *
+ * @author Flurin Haenseler, Gael Lederrey
+ *
+ */
+
+public class EngineTest {
+
+	private static final int NUM_ALLOC_RUNS = 10; //number of simulations for allocation check
+	private static final int NUM_CONCURRENT_REPEATS = 2; //concurrent runs per scenario and configuration
+	private static final double REF_TOL = 1e-9; //tolerance of reference log-likelihoods
+
+	//example scenarios (BER and HKU)
+	private static final ArrayList<String> scenarioList = new ArrayList<String>(Arrays.asList(
+			"examples/scenarios/BER-drake_scenario.txt", "examples/scenarios/BER-sbfd_scenario.txt",
+			"examples/scenarios/BER-weidmann_scenario.txt", "examples/scenarios/BER-zero_scenario.txt",
+			"examples/scenarios/HKU-drake_85_87.txt", "examples/scenarios/HKU-sbfd_85_87.txt",
+			"examples/scenarios/HKU-weidmann_85_87.txt", "examples/scenarios/HKU-zero_85_87.txt"));
+
+	//reference log-likelihoods of scenarios (default configuration), obtained with the original
+	//engine (commit d98f8f0, unmodified); the tolerance covers round-off of the fundamental diagrams
+	private static final double[] refLogLikelihood = {
+			-547.5341226463811, -527.340832107956, -550.1211636032091, -577.950348742898,
+			-374.00265600467503, -348.2333236647595, -360.6932669498405, -416.86950848443473};
+
+	//numerical configurations of concurrency check
+	private static final ArrayList<Numerics> configList = new ArrayList<Numerics>(Arrays.asList(
+			Numerics.DEFAULT,
+			Numerics.builder().numStepThreads(3).build(),
+			Numerics.builder().tabulateFD(true).build(),
+			Numerics.builder().potentialTol(1e-3).build(),
+			Numerics.builder().fastForward(false).incrementalPotentials(false).build()));
+
+	//numerical configurations which must give the same results as the default configuration
+	//(sequential time step, no fast-forwarding, potentials recomputed from scratch)
+	private static final ArrayList<Numerics> equivConfigList = new ArrayList<Numerics>(Arrays.asList(
+			Numerics.builder().numStepThreads(3).build(),
+			Numerics.builder().fastForward(false).incrementalPotentials(false).build()));
+
+	//descriptions of failed checks
+	private final ArrayList<String> failures = new ArrayList<String>();
+
+	public static void main(String[] args) {
+		EngineTest test = new EngineTest();
+
+		test.checkReferenceResults();
+		test.checkEquivalentConfigs();
+		test.checkAllocationFree();
+		test.checkConcurrentRuns(NUM_CONCURRENT_REPEATS);
+
+		if (!test.failures.isEmpty()) {
+			System.out.println("FAILED: " + test.failures);
+			System.exit(1);
+		}
+
+		System.out.println("All checks passed");
+	}
+
+	//check log-likelihoods of scenarios against reference values
+	private void checkReferenceResults() {
+		for (int i = 0; i < scenarioList.size(); i++) {
+			Board board = new Board(scenarioList.get(i));
+
+			board.simulate();
+
+			double deviation = Math.abs(board.getLogLikelihood() - refLogLikelihood[i]);
+
+			System.out.println("Scenario " + scenarioList.get(i) + ": log-likelihood " +
+					board.getLogLikelihood() + " (deviation from reference " + deviation + ")");
+
+			if (!(deviation <= REF_TOL)) {
+				failures.add("log-likelihood of scenario " + scenarioList.get(i) + " deviates from reference by " +
+						deviation);
+			}
+		}
+	}
+
+	//check that configurations which only change the way a simulation is carried out (see
+	//equivConfigList) give the same log-likelihoods bit by bit (e.g., the critical accumulations of
+	//the Weidmann diagram must not depend on the starting points of their root searches)
+	private void checkEquivalentConfigs() {
+		for (String scenario : scenarioList) {
+			double refLL = simulateLL(scenario, Numerics.DEFAULT);
+
+			for (Numerics numerics : equivConfigList) {
+				double ll = simulateLL(scenario, numerics);
+
+				if (Double.doubleToLongBits(ll) != Double.doubleToLongBits(refLL)) {
+					failures.add("run of " + scenario + " with " + numerics + ": " + ll + " instead of " + refLL);
+				}
+			}
+		}
+
+		System.out.println(scenarioList.size()*equivConfigList.size() +
+				" runs with configurations equivalent to the default one checked");
+	}
+
+	//check that a time step does not allocate memory once warmed up
+	private void checkAllocationFree() {
+		for (String scenario : scenarioList) {
+			Board board = new Board(scenario);
+
+			long maxStepAlloc = measureStepAllocation(board, NUM_ALLOC_RUNS);
+
+			System.out.println("Scenario " + scenario + ": at most " + maxStepAlloc +
+					" bytes allocated per time step");
+
+			if (maxStepAlloc > 0) {
+				failures.add("time step allocates memory in scenario " + scenario);
+			}
+		}
+	}
+
+	//check that simulations with different numerical configurations do not interfere: every
+	//scenario is simulated with every configuration, first sequentially (each with its own network
+	//model) and then all runs concurrently (numRepeats times each, sharing the network models);
+	//the log-likelihoods must be identical bit by bit
+	private void checkConcurrentRuns(int numRepeats) {
+		int numCombi = scenarioList.size()*configList.size();
+
+		//sequential reference
+		double[] refLL = new double[numCombi];
+		for (int i = 0; i < numCombi; i++) {
+			refLL[i] = simulateLL(i, null);
+		}
+
+		//all runs concurrently (combinations interleaved)
+		NetworkModelCache modelCache = new NetworkModelCache();
+		double[] parLL = new double[numCombi*numRepeats];
+		IntStream.range(0, parLL.length).parallel().forEach(
+				(k) -> parLL[k] = simulateLL(k % numCombi, modelCache));
+
+		int numMismatches = 0;
+
+		for (int k = 0; k < parLL.length; k++) {
+			int i = k % numCombi;
+
+			if (Double.doubleToLongBits(parLL[k]) != Double.doubleToLongBits(refLL[i])) {
+				numMismatches++;
+				failures.add("concurrent run of " + scenarioList.get(i / configList.size()) + " with " +
+						configList.get(i % configList.size()) + ": " + parLL[k] + " instead of " + refLL[i]);
+			}
+		}
+
+		System.out.println(parLL.length + " concurrent runs of " + numCombi +
+				" scenario/configuration pairs, " + numMismatches + " mismatches");
+	}
+
+	//log-likelihood of scenario with given configuration
+	private static double simulateLL(String scenario, Numerics numerics) {
+		Board board = new Board(scenario, numerics);
+
+		board.simulate();
+		board.close();
+
+		return board.getLogLikelihood();
+	}
+
+	//log-likelihood of i-th scenario/configuration pair (network model of cache unless null)
+	private static double simulateLL(int i, NetworkModelCache modelCache) {
+		String scenario = scenarioList.get(i / configList.size());
+		Numerics numerics = configList.get(i % configList.size());
+
+		Board board = (modelCache != null) ? new Board(scenario, modelCache, numerics) : new Board(scenario, numerics);
+
+		board.simulate();
+		board.close();
+
+		return board.getLogLikelihood();
+	}
+
+	//simulate numRuns times and return the maximal number of bytes allocated by a single time step
+	//in the best run after the first one; the first run serves as warm-up (growing of tables),
+	//further runs are needed as JIT compilation may cause sporadic allocations until the code is compiled
+	//requires a JVM supporting thread allocation measurement (com.sun.management.ThreadMXBean)
+	private static long measureStepAllocation(Board board, int numRuns) {
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadID = Thread.currentThread().getId();
+
+		int lastDep = board.getLastDeparture();
+		int maxTime = lastDep + Parameter.MaxTravelTime;
+
+		long minRunAlloc = Long.MAX_VALUE; //allocation of best run
+
+		for (int run = 0; run < numRuns; run++) {
+			board.resetState();
+
+			long maxStepAlloc = 0; //maximal allocation of a time step in current run
+
+			for (int timeStep = 0; timeStep <= maxTime; timeStep++) {
+				long allocBefore = threadBean.getThreadAllocatedBytes(threadID);
+				board.iterate(timeStep);
+				long allocAfter = threadBean.getThreadAllocatedBytes(threadID);
+
+				maxStepAlloc = Math.max(maxStepAlloc, allocAfter - allocBefore);
+
+				if (board.getTotAcc() < board.getParam().numerics.absTol && timeStep > lastDep) {
+					break;
+				}
+			}
+
+			if (run > 0) {
+				minRunAlloc = Math.min(minRunAlloc, maxStepAlloc);
+			}
+		}
+
+		//leave board in a consistent state
+		board.resetState();
+
+		return minRunAlloc;
+	}
+
+}